@@ -29,6 +29,7 @@ import net.minecraftforge.fml.client.registry.ClientRegistry;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.common.SidedProxy;
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
+import net.minecraftforge.fml.common.event.FMLModIdMappingEvent;
 import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
@@ -138,6 +139,7 @@ public final class Investiture
     public void preInit(FMLPreInitializationEvent event)
     {
         network = FunctionalNetwork.create(MOD_ID);
+        network.enableBatching();
         log = LogManager.getLogger(MOD_ID);
         // Delegate event to modules
         modules.forEach(m ->
@@ -183,6 +185,18 @@ public final class Investiture
         proxy.postInit(event);
     }
 
+    /**
+     * Fired whenever the IDs of registry entries have changed, e.g. when joining a server or loading a world.
+     *
+     * @param event the event that triggers this method
+     */
+    @Mod.EventHandler
+    public void remap(FMLModIdMappingEvent event)
+    {
+        // Delegate event to modules
+        modules.forEach(m -> m.remap(event));
+    }
+
     /**
      * Container class for all blocks in the base mod.
      */
@@ -1,6 +1,5 @@
 package de.mineformers.investiture.allomancy;
 
-import com.google.common.base.Throwables;
 import de.mineformers.investiture.Investiture;
 import de.mineformers.investiture.allomancy.api.metal.Metal;
 import de.mineformers.investiture.allomancy.api.metal.Metals;
@@ -12,6 +11,7 @@ import de.mineformers.investiture.allomancy.core.AllomancyCommand;
 import de.mineformers.investiture.allomancy.crusher.CrusherRecipes;
 import de.mineformers.investiture.allomancy.impl.AllomancyAPIImpl;
 import de.mineformers.investiture.allomancy.impl.CoreEventHandler;
+import de.mineformers.investiture.allomancy.impl.EntityAllomancer;
 import de.mineformers.investiture.allomancy.impl.SimpleMetalStorage;
 import de.mineformers.investiture.allomancy.impl.misting.temporal.AugurImpl;
 import de.mineformers.investiture.allomancy.item.MetalItem;
@@ -33,6 +33,7 @@ import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.common.SidedProxy;
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
+import net.minecraftforge.fml.common.event.FMLModIdMappingEvent;
 import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
@@ -46,7 +47,6 @@ import net.minecraftforge.oredict.OreDictionary;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
 
 import static de.mineformers.investiture.Investiture.MOD_ID;
@@ -124,6 +124,12 @@ public final class Allomancy implements Manifestation
         proxy.postInit(event);
     }
 
+    @Override
+    public void remap(FMLModIdMappingEvent event)
+    {
+        AllomancyAPIImpl.INSTANCE.invalidateBlockStates();
+    }
+
     /**
      * Container class for all blocks in the Allomancy module.
      */
@@ -228,7 +234,8 @@ public final class Allomancy implements Manifestation
                 @Override
                 public void serialiseImpl(MetalStack value, ByteBuf buffer)
                 {
-                    ByteBufUtils.writeUTF8String(buffer, value.getMetal().id());
+                    // Metals are identified by their local ordinals, only the server sends them and clients translate them on receipt
+                    ByteBufUtils.writeVarInt(buffer, Metals.ordinal(value.getMetal()), 5);
                     buffer.writeFloat(value.getQuantity());
                     buffer.writeFloat(value.getPurity());
                 }
@@ -236,10 +243,12 @@ public final class Allomancy implements Manifestation
                 @Override
                 public MetalStack deserialiseImpl(ByteBuf buffer)
                 {
-                    String id = ByteBufUtils.readUTF8String(buffer);
+                    int ordinal = ByteBufUtils.readVarInt(buffer, 5);
                     float quantity = buffer.readFloat();
                     float purity = buffer.readFloat();
-                    return new MetalStack(Metals.get(id), quantity, purity);
+                    // Metals only the server knows are dropped instead of failing the whole message
+                    Metal metal = AllomancyAPIImpl.INSTANCE.getRemoteMetal(ordinal);
+                    return metal != null ? new MetalStack(metal, quantity, purity) : null;
                 }
 
                 @Override
@@ -263,11 +272,12 @@ public final class Allomancy implements Manifestation
                 @Override
                 public void serialiseImpl(SimpleMetalStorage value, ByteBuf buffer)
                 {
+                    buffer.writeInt(value.version);
                     Set<Metal> metals = value.getStoredMetals();
                     buffer.writeInt(metals.size());
                     for (Metal metal : metals)
                     {
-                        ByteBufUtils.writeUTF8String(buffer, metal.id());
+                        ByteBufUtils.writeVarInt(buffer, Metals.ordinal(metal), 5);
                         List<? extends MetalStack> stacks = value.getStored(metal);
                         buffer.writeInt(stacks.size());
                         for (MetalStack stack : stacks)
@@ -281,15 +291,18 @@ public final class Allomancy implements Manifestation
                 public SimpleMetalStorage deserialiseImpl(ByteBuf buffer)
                 {
                     SimpleMetalStorage storage = new SimpleMetalStorage();
+                    storage.version = buffer.readInt();
                     int metalCount = buffer.readInt();
                     for (int i = 0; i < metalCount; i++)
                     {
-                        String id = ByteBufUtils.readUTF8String(buffer);
-                        Metal metal = Metals.get(id);
+                        // Every stack carries its metal as well, the metal's ordinal only groups them
+                        ByteBufUtils.readVarInt(buffer, 5);
                         int stackCount = buffer.readInt();
                         for (int j = 0; j < stackCount; j++)
                         {
-                            storage.storage.put(metal, Serialisation.INSTANCE.readFromBuffer(MetalStack.class, buffer));
+                            MetalStack stack = Serialisation.INSTANCE.readFromBuffer(MetalStack.class, buffer);
+                            if (stack != null)
+                                storage.apply(AllomancerStorageUpdate.ACTION_APPEND, stack, 0);
                         }
                     }
                     return storage;
@@ -310,9 +323,12 @@ public final class Allomancy implements Manifestation
                 }
             });
 
+            Investiture.net().registerMessage(AllomancyRegistryUpdate.class);
             Investiture.net().registerMessage(ToggleBurningMetal.class);
             Investiture.net().registerMessage(MetalExtractorUpdate.class);
             Investiture.net().registerMessage(AllomancerUpdate.class);
+            Investiture.net().registerMessage(AllomancerDelta.class);
+            Investiture.net().registerMessage(AllomancerSyncRequest.class);
             Investiture.net().registerMessage(AllomancerStorageUpdate.class);
             Investiture.net().registerMessage(MistingUpdate.class);
 
@@ -340,6 +356,18 @@ public final class Allomancy implements Manifestation
                 return null;
             });
 
+            Investiture.net().addHandler(AllomancerSyncRequest.class, Side.SERVER, (msg, ctx) ->
+            {
+                ctx.schedule(() ->
+                             {
+                                 Entity entity = ctx.player().world.getEntityByID(msg.entityId);
+                                 if (entity != null)
+                                     getAllomancer(entity).filter(a -> a instanceof EntityAllomancer)
+                                                          .ifPresent(a -> ((EntityAllomancer) a).requestSync(ctx.player()));
+                             });
+                return null;
+            });
+
             Investiture.net().addHandler(TargetEffect.class, Side.SERVER, (msg, ctx) ->
             {
                 ctx.schedule(() ->
@@ -347,19 +375,11 @@ public final class Allomancy implements Manifestation
                                  Entity entity = ctx.player().world.getEntityByID(msg.entityId);
                                  if (entity != null)
                                  {
+                                     Class<? extends Misting> type = AllomancyAPIImpl.INSTANCE.getMistingType(msg.type);
+                                     if (type == null)
+                                         return;
                                      getAllomancer(entity)
-                                         .flatMap(a ->
-                                                  {
-                                                      try
-                                                      {
-                                                          return a.as((Class<? extends Misting>) Class.forName(msg.type));
-                                                      }
-                                                      catch (ClassNotFoundException e)
-                                                      {
-                                                          Throwables.propagate(e);
-                                                      }
-                                                      return Optional.empty();
-                                                  })
+                                         .flatMap(a -> a.as(type))
                                          .filter(m -> m instanceof Targeting && ((Targeting) m).isValid(msg.target))
                                          .ifPresent(t -> ((Targeting) t).apply(msg.target));
                                  }
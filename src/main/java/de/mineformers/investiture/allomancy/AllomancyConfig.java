@@ -4,6 +4,7 @@ import de.mineformers.investiture.Investiture;
 import net.minecraftforge.common.config.Config;
 import net.minecraftforge.common.config.Config.Comment;
 import net.minecraftforge.common.config.Config.RangeDouble;
+import net.minecraftforge.common.config.Config.RangeInt;
 
 @Config(modid = Investiture.MOD_ID, name = Allomancy.DOMAIN)
 public class AllomancyConfig
@@ -11,6 +12,64 @@ public class AllomancyConfig
     @Comment("Manipulate individual misting types here")
     public static Mistings mistings = new Mistings();
 
+    @Comment("Tune how work for Allomancers is spread across ticks")
+    public static Scheduling scheduling = new Scheduling();
+
+    public static class Scheduling
+    {
+        @Comment({
+            "The number of ticks work that is not required every tick is spread across, e.g. synchronising with clients or scanning for metals.",
+            "Every Allomancer is assigned to one of the ticks, increasing the value spreads the work thinner but delays it longer.",
+            "The default value of 3 matches the interval metals have always been scanned in, use the stats command to tune it."
+        })
+        @RangeInt(min = 1, max = 20)
+        public int shards = 3;
+    }
+
+    @Comment("Tune how the state of Allomancers is synchronised with clients")
+    public static Sync sync = new Sync();
+
+    public static class Sync
+    {
+        @Comment({
+            "The number of ticks between updates of the stored quantity of a metal that is being burned.",
+            "Clients predict the quantity in between updates based on the rate the metal is burned at."
+        })
+        @RangeInt(min = 1)
+        public int storageInterval = 20;
+        @Comment({
+            "The difference between the actual and the predicted quantity of a metal that triggers an update before the interval has passed.",
+            "The default value of 5 equals 5 ticks of burning a metal at the default rate."
+        })
+        @RangeDouble(min = 0)
+        public double storageThreshold = 5;
+    }
+
+    @Comment("Tune how far and how precisely Allomancers sense metals")
+    public static MetalSense metalSense = new MetalSense();
+
+    public static class MetalSense
+    {
+        @Comment({
+            "The radius of the sphere around an Allomancer in which metallic blocks and entities can be pushed on or pulled.",
+            "The default value of 12 matches the range metals have always been sensed in."
+        })
+        @RangeDouble(min = 1, max = 64)
+        public double range = 12;
+        @Comment({
+            "The radius in which metallic blocks are sensed individually, blocks further away are grouped into one target per chunk section.",
+            "Lowering it reduces the number of lines drawn and targets considered in areas with many metallic blocks."
+        })
+        @RangeDouble(min = 0, max = 64)
+        public double detailRange = 8;
+        @Comment({
+            "The number of threads checking chunk sections for metallic blocks when they are first sensed.",
+            "A value of 0 checks them on the main thread, delaying the tick but making them available right away."
+        })
+        @RangeInt(min = 0, max = 8)
+        public int scanThreads = 2;
+    }
+
     public static class Mistings
     {
         public Thug thug = new Thug();
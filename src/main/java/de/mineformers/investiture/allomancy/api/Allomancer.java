@@ -9,6 +9,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.Collection;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * An Allomancer is capable of 'burning' metals and gaining powers through this process.
@@ -48,6 +49,18 @@ public interface Allomancer
 
     <T extends Misting> T grantPower(Class<T> type);
 
+    /**
+     * Applies several changes to this Allomancer at once.
+     * Clients are only informed about the resulting state once the modification is complete, instead of after every single change.
+     * Modifications may be nested, the state is synchronised when the outermost one completes.
+     *
+     * @param modification the changes to apply
+     */
+    default void modify(Consumer<? super Allomancer> modification)
+    {
+        modification.accept(this);
+    }
+
     boolean takePower(Class<? extends Misting> type);
 
     void activate(Class<? extends Misting> type);
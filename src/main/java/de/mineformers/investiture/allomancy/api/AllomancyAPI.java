@@ -3,6 +3,7 @@ package de.mineformers.investiture.allomancy.api;
 import com.google.common.collect.FluentIterable;
 import de.mineformers.investiture.allomancy.api.metal.MetalMapping;
 import de.mineformers.investiture.allomancy.api.misting.Misting;
+import de.mineformers.investiture.allomancy.api.misting.MistingDescriptor;
 import de.mineformers.investiture.allomancy.impl.misting.temporal.SpeedBubble;
 import net.minecraft.block.state.BlockWorldState;
 import net.minecraft.block.state.IBlockState;
@@ -13,6 +14,7 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.Collection;
 import java.util.Optional;
@@ -37,6 +39,13 @@ public interface AllomancyAPI
      */
     <T extends Misting> void registerMisting(Class<T> type, MistingFactory<? extends T> factory);
 
+    /**
+     * @param type the base interface of a registered Misting type or the class of its implementation
+     * @return the description of the Misting type, null if it was never registered
+     */
+    @Nullable
+    MistingDescriptor getDescriptor(Class<?> type);
+
     /**
      * Registers a custom equality check to be used by the automatic synchronisation of Mistings.
      *
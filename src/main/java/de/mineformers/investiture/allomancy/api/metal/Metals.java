@@ -32,6 +32,9 @@ import java.util.*;
 public final class Metals
 {
     private static final Set<Metal> METALS = new HashSet<>();
+    private static final Map<Metal, Integer> ORDINALS = new HashMap<>();
+    private static final Map<String, Metal> BY_ID = new HashMap<>();
+    private static Metal[] byOrdinal = new Metal[0];
     private static final Set<MetalAlloy> ALLOYS = new HashSet<>();
     // Base metals
     public static final Metal COPPER = new ItemMetalBurnable("copper", Smoker.class, 1);
@@ -85,26 +88,26 @@ public final class Metals
      */
     public static void init()
     {
-        METALS.add(BRONZE);
-        METALS.add(BRASS);
-        METALS.add(COPPER);
-        METALS.add(ZINC);
-        METALS.add(TIN);
-        METALS.add(IRON);
-        METALS.add(PEWTER);
-        METALS.add(STEEL);
-        METALS.add(DURALUMIN);
-        METALS.add(NICROSIL);
-        METALS.add(ALUMINIUM);
-        METALS.add(CHROMIUM);
-        METALS.add(GOLD);
-        METALS.add(CADMIUM);
-        METALS.add(ELECTRUM);
-        METALS.add(BENDALLOY);
-        METALS.add(LEAD);
-        METALS.add(BISMUTH);
-        METALS.add(SILVER);
-        METALS.add(NICKEL);
+        register(BRONZE);
+        register(BRASS);
+        register(COPPER);
+        register(ZINC);
+        register(TIN);
+        register(IRON);
+        register(PEWTER);
+        register(STEEL);
+        register(DURALUMIN);
+        register(NICROSIL);
+        register(ALUMINIUM);
+        register(CHROMIUM);
+        register(GOLD);
+        register(CADMIUM);
+        register(ELECTRUM);
+        register(BENDALLOY);
+        register(LEAD);
+        register(BISMUTH);
+        register(SILVER);
+        register(NICKEL);
 
         ALLOYS.add(BRONZE);
         ALLOYS.add(BRASS);
@@ -116,6 +119,51 @@ public final class Metals
         ALLOYS.add(BENDALLOY);
     }
 
+    private static void register(Metal metal)
+    {
+        METALS.add(metal);
+        if (BY_ID.putIfAbsent(metal.id(), metal) == null)
+        {
+            ORDINALS.put(metal, byOrdinal.length);
+            byOrdinal = Arrays.copyOf(byOrdinal, byOrdinal.length + 1);
+            byOrdinal[byOrdinal.length - 1] = metal;
+        }
+    }
+
+    /**
+     * Ordinals are assigned in the order metals are registered, they are dense and start at 0.
+     *
+     * @param metal the metal to get the ordinal for
+     * @return the ordinal of the metal, -1 if it was never registered
+     */
+    public static int ordinal(Metal metal)
+    {
+        Integer ordinal = ORDINALS.get(metal);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    /**
+     * @return the number of registered metals, all ordinals are less than it
+     */
+    public static int count()
+    {
+        return byOrdinal.length;
+    }
+
+    /**
+     * @param ordinal the ordinal of the searched metal
+     * @return the requested metal
+     * @throws IllegalArgumentException if there is no metal with the given ordinal
+     */
+    public static Metal get(int ordinal)
+    {
+        if (ordinal < 0 || ordinal >= byOrdinal.length)
+        {
+            throw new IllegalArgumentException("Requested metal with ordinal " + ordinal + " does not exist!");
+        }
+        return byOrdinal[ordinal];
+    }
+
     /**
      * @param id the ID of the searched metal
      * @return the requested metal
@@ -123,12 +171,12 @@ public final class Metals
      */
     public static Metal get(String id)
     {
-        Optional<Metal> result = METALS.stream().filter(m -> m.id().equals(id)).findFirst();
-        if (!result.isPresent())
+        Metal result = BY_ID.get(id);
+        if (result == null)
         {
             throw new IllegalArgumentException("Requested metal '" + id + "' does not exist!");
         }
-        return result.get();
+        return result;
     }
 
     /**
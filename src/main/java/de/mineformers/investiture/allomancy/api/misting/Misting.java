@@ -19,6 +19,16 @@ public interface Misting
 
     void stopBurning();
 
+    /**
+     * Marks a synchronised field as changed, it will be sent to all clients tracking the owning entity during the next update.
+     * Implementations which do not keep track of their changes will be compared against their last synchronised state instead.
+     *
+     * @param field the name of the changed field
+     */
+    default void markDirty(String field)
+    {
+    }
+
     default String category()
     {
         Class<?> clazz = this.getClass();
@@ -0,0 +1,95 @@
+package de.mineformers.investiture.allomancy.api.misting;
+
+import de.mineformers.investiture.allomancy.api.MistingFactory;
+import de.mineformers.investiture.allomancy.api.power.AllomanticPower;
+import de.mineformers.investiture.allomancy.api.power.Effect;
+import de.mineformers.investiture.allomancy.api.power.PowerDescriptionNotFound;
+import de.mineformers.investiture.allomancy.api.power.Scope;
+import de.mineformers.investiture.serialisation.ClassCodec;
+
+import javax.annotation.Nullable;
+
+/**
+ * Describes a registered Misting type, computed once when the type is registered.
+ * Provides the information otherwise only available through reflection, e.g. the {@link AllomanticPower} annotation of the type.
+ */
+public final class MistingDescriptor
+{
+    private final Class<? extends Misting> type;
+    private final Class<? extends Misting> implementation;
+    private final int id;
+    @Nullable
+    private final AllomanticPower power;
+    private final MistingFactory<?> factory;
+    private final ClassCodec codec;
+
+    public MistingDescriptor(Class<? extends Misting> type, Class<? extends Misting> implementation, int id, MistingFactory<?> factory,
+                             ClassCodec codec)
+    {
+        this.type = type;
+        this.implementation = implementation;
+        this.id = id;
+        this.power = type.getAnnotation(AllomanticPower.class);
+        this.factory = factory;
+        this.codec = codec;
+    }
+
+    /**
+     * @return the base interface of the Misting type
+     */
+    public Class<? extends Misting> type()
+    {
+        return type;
+    }
+
+    /**
+     * @return the class of the instances created by the factory
+     */
+    public Class<? extends Misting> implementation()
+    {
+        return implementation;
+    }
+
+    /**
+     * @return the ID assigned to the Misting type on this side
+     */
+    public int id()
+    {
+        return id;
+    }
+
+    public String category()
+    {
+        return power().category();
+    }
+
+    public Scope scope()
+    {
+        return power().scope();
+    }
+
+    public Effect effect()
+    {
+        return power().effect();
+    }
+
+    private AllomanticPower power()
+    {
+        if (power == null)
+            throw new PowerDescriptionNotFound(implementation);
+        return power;
+    }
+
+    public MistingFactory<?> factory()
+    {
+        return factory;
+    }
+
+    /**
+     * @return the plan for serialising instances of the implementation
+     */
+    public ClassCodec codec()
+    {
+        return codec;
+    }
+}
@@ -1,10 +1,12 @@
 package de.mineformers.investiture.allomancy.core;
 
 import de.mineformers.investiture.allomancy.Allomancy;
+import de.mineformers.investiture.allomancy.AllomancyConfig;
 import de.mineformers.investiture.allomancy.api.Allomancer;
 import de.mineformers.investiture.allomancy.api.metal.Metals;
 import de.mineformers.investiture.allomancy.api.misting.Misting;
 import de.mineformers.investiture.allomancy.impl.AllomancyAPIImpl;
+import de.mineformers.investiture.allomancy.impl.UpdateScheduler;
 import net.minecraft.command.CommandBase;
 import net.minecraft.command.CommandException;
 import net.minecraft.command.ICommandSender;
@@ -27,6 +29,7 @@ public class AllomancyCommand extends CommandBase
     private static final String ACTION_ADD = "grant";
     private static final String ACTION_REMOVE = "take";
     private static final String ACTION_ALL = "mistborn";
+    private static final String ACTION_STATS = "stats";
 
     @Override
     public String getName()
@@ -52,8 +55,10 @@ public class AllomancyCommand extends CommandBase
         switch (args.length)
         {
             case 1:
-                return getListOfStringsMatchingLastWord(args, ACTION_ADD, ACTION_REMOVE, ACTION_ALL);
+                return getListOfStringsMatchingLastWord(args, ACTION_ADD, ACTION_REMOVE, ACTION_ALL, ACTION_STATS);
             case 2:
+                if (ACTION_STATS.equalsIgnoreCase(args[0]))
+                    return super.getTabCompletions(server, sender, args, targetPos);
                 if (!ACTION_ALL.equalsIgnoreCase(args[0]))
                     return getListOfStringsMatchingLastWord(args, AllomancyAPIImpl.INSTANCE.getMistingNames());
             case 3:
@@ -85,6 +90,9 @@ public class AllomancyCommand extends CommandBase
             case ACTION_ALL:
                 handleAll(server, sender, action, Arrays.copyOfRange(args, 1, args.length));
                 break;
+            case ACTION_STATS:
+                handleStats(sender);
+                break;
             default:
                 throw new WrongUsageException(getUsage(sender));
         }
@@ -117,7 +125,21 @@ public class AllomancyCommand extends CommandBase
         Optional<Allomancer> allomancer = AllomancyAPIImpl.INSTANCE.toAllomancer(player);
         if (!allomancer.isPresent())
             throw new CommandException(Allomancy.DOMAIN + ".commands.manage.no_allomancer");
-        Metals.BASE_METALS.forEach(m -> allomancer.get().grantPower(m.mistingType()));
+        allomancer.get().modify(a -> Metals.BASE_METALS.forEach(m -> a.grantPower(m.mistingType())));
         sender.sendMessage(new TextComponentTranslation(Allomancy.DOMAIN + ".commands.manage.granted_all", sender.getDisplayName()));
     }
+
+    private void handleStats(ICommandSender sender)
+    {
+        sender.sendMessage(new TextComponentTranslation(Allomancy.DOMAIN + ".commands.manage.stats", UpdateScheduler.seconds(),
+                                                        AllomancyConfig.scheduling.shards));
+        for (UpdateScheduler.Work work : UpdateScheduler.Work.values())
+        {
+            sender.sendMessage(new TextComponentTranslation(Allomancy.DOMAIN + ".commands.manage.stats.work",
+                                                            work.name().toLowerCase(),
+                                                            UpdateScheduler.executed(work), UpdateScheduler.deferred(work),
+                                                            String.format("%.2f", UpdateScheduler.millis(work))));
+        }
+        UpdateScheduler.reset();
+    }
 }
@@ -1,11 +1,9 @@
 package de.mineformers.investiture.allomancy.core;
 
-import com.google.common.base.Throwables;
-import com.google.common.collect.ListMultimap;
 import de.mineformers.investiture.Investiture;
 import de.mineformers.investiture.allomancy.Allomancy;
+import de.mineformers.investiture.allomancy.api.Allomancer;
 import de.mineformers.investiture.allomancy.api.Capabilities;
-import de.mineformers.investiture.allomancy.api.metal.Metal;
 import de.mineformers.investiture.allomancy.api.metal.stack.MetalStack;
 import de.mineformers.investiture.allomancy.api.metal.stack.MetalStackProvider;
 import de.mineformers.investiture.allomancy.api.metal.stack.SingleMetalStackProvider;
@@ -21,8 +19,11 @@ import de.mineformers.investiture.allomancy.impl.misting.physical.TineyeImpl;
 import de.mineformers.investiture.allomancy.impl.misting.temporal.SpeedBubble;
 import de.mineformers.investiture.allomancy.impl.misting.temporal.SpeedBubbles;
 import de.mineformers.investiture.allomancy.item.MetalItem;
+import de.mineformers.investiture.allomancy.network.AllomancerDelta;
 import de.mineformers.investiture.allomancy.network.AllomancerStorageUpdate;
+import de.mineformers.investiture.allomancy.network.AllomancerSyncRequest;
 import de.mineformers.investiture.allomancy.network.AllomancerUpdate;
+import de.mineformers.investiture.allomancy.network.AllomancyRegistryUpdate;
 import de.mineformers.investiture.allomancy.network.MistingUpdate;
 import de.mineformers.investiture.allomancy.network.SpeedBubbleUpdate;
 import de.mineformers.investiture.client.KeyBindings;
@@ -41,6 +42,7 @@ import net.minecraftforge.event.entity.player.ItemTooltipEvent;
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.network.FMLNetworkEvent;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
@@ -70,6 +72,14 @@ public class ClientProxy implements ManifestationProxy
         MinecraftForge.EVENT_BUS.register(new TineyeImpl.EventHandler());
         MinecraftForge.EVENT_BUS.register(new TargetHandler());
 
+        // Installed right away on the network thread, the messages following it are decoded against the server's IDs
+        Investiture.net().addHandler(AllomancyRegistryUpdate.class, Side.CLIENT, (msg, ctx) ->
+        {
+            AllomancyAPIImpl.INSTANCE.setRemoteMistingRegistry(msg.mistings);
+            AllomancyAPIImpl.INSTANCE.setRemoteMetalRegistry(msg.metals);
+            return null;
+        });
+
         Investiture.net().addHandler(AllomancerUpdate.class, Side.CLIENT, (msg, ctx) ->
         {
             ctx.schedule(() ->
@@ -81,31 +91,49 @@ public class ClientProxy implements ManifestationProxy
                                                                      if (a instanceof EntityAllomancer)
                                                                      {
                                                                          ((EntityAllomancer) a).setStorage(msg.metalStorage);
-                                                                         msg.metalStorage.allomancer = (EntityAllomancer) a;
-                                                                         ((EntityAllomancer) a).setActivePowers(msg.activePowers);
+                                                                         msg.metalStorage.attach((EntityAllomancer) a);
+                                                                         ((EntityAllomancer) a).setActivePowers(
+                                                                             AllomancyAPIImpl.INSTANCE.toLocalMistingMask(msg.activePowers));
                                                                      }
                                                                  });
                          });
             return null;
         });
 
-        Investiture.net().addHandler(MistingUpdate.class, Side.CLIENT, (msg, ctx) ->
+        Investiture.net().addHandler(AllomancerDelta.class, Side.CLIENT, (msg, ctx) ->
         {
             ctx.schedule(() ->
                          {
                              Entity entity = ctx.player().world.getEntityByID(msg.entityId);
-                             try
-                             {
-                                 AllomancyAPIImpl.INSTANCE.read(entity, (Class<? extends Misting>) Class.forName(msg.type), msg.data);
-                             }
-                             catch (ClassNotFoundException e)
+                             Allomancer a = entity != null ? AllomancyAPIImpl.INSTANCE.toAllomancer(entity).orElse(null) : null;
+                             if (!(a instanceof EntityAllomancer))
+                                 return;
+                             EntityAllomancer allomancer = (EntityAllomancer) a;
+                             long activated = AllomancyAPIImpl.INSTANCE.toLocalMistingMask(msg.activated);
+                             long deactivated = AllomancyAPIImpl.INSTANCE.toLocalMistingMask(msg.deactivated);
+                             allomancer.setActivePowers((allomancer.getActivePowerMask() & ~deactivated) | activated);
+                             SimpleMetalStorage storage = (SimpleMetalStorage) allomancer.storage();
+                             if (storage.version != msg.storageVersion)
                              {
-                                 Throwables.propagate(e);
+                                 storage.version = msg.storageVersion;
+                                 Investiture.net().sendToServer(new AllomancerSyncRequest(msg.entityId));
                              }
                          });
             return null;
         });
 
+        Investiture.net().addHandler(MistingUpdate.class, Side.CLIENT, (msg, ctx) ->
+        {
+            ctx.schedule(() ->
+                         {
+                             Entity entity = ctx.player().world.getEntityByID(msg.entityId);
+                             Class<? extends Misting> type = AllomancyAPIImpl.INSTANCE.getRemoteMistingType(msg.type);
+                             if (entity != null && type != null)
+                                 AllomancyAPIImpl.INSTANCE.read(entity, type, msg.data);
+                         });
+            return null;
+        });
+
         Investiture.net().addHandler(AllomancerStorageUpdate.class, Side.CLIENT, (msg, ctx) ->
         {
             ctx.schedule(() ->
@@ -116,28 +144,14 @@ public class ClientProxy implements ManifestationProxy
                                                                  {
                                                                      if (a instanceof EntityAllomancer)
                                                                      {
-                                                                         ListMultimap<Metal, MetalStack> storage =
-                                                                             ((SimpleMetalStorage) a.storage()).storage;
-                                                                         switch (msg.action)
-                                                                         {
-                                                                             case AllomancerStorageUpdate.ACTION_APPEND:
-                                                                                 storage.put(msg.stack.getMetal(), msg.stack);
-                                                                                 break;
-                                                                             case AllomancerStorageUpdate.ACTION_UPDATE_LAST:
-                                                                                 List<MetalStack> existing = storage.get(msg.stack.getMetal());
-                                                                                 if (!existing.isEmpty())
-                                                                                 {
-                                                                                     existing.set(existing.size() - 1, msg.stack);
-                                                                                 }
-                                                                                 break;
-                                                                             case AllomancerStorageUpdate.ACTION_REMOVE_LAST:
-                                                                                 List<MetalStack> removable = storage.get(msg.stack.getMetal());
-                                                                                 if (!removable.isEmpty())
-                                                                                 {
-                                                                                     removable.remove(removable.size() - 1);
-                                                                                 }
-                                                                                 break;
-                                                                         }
+                                                                         SimpleMetalStorage metalStorage = (SimpleMetalStorage) a.storage();
+                                                                         // A gap in the versions means an update was missed
+                                                                         if (msg.version != metalStorage.version + 1)
+                                                                             Investiture.net().sendToServer(new AllomancerSyncRequest(msg.entityId));
+                                                                         metalStorage.version = msg.version;
+                                                                         // The stack is missing if the client does not know its metal
+                                                                         if (msg.stack != null)
+                                                                             metalStorage.apply(msg.action, msg.stack, msg.rate);
                                                                      }
                                                                  });
                          });
@@ -182,6 +196,14 @@ public class ClientProxy implements ManifestationProxy
             }
         }
 
+        @SubscribeEvent
+        public void onDisconnect(FMLNetworkEvent.ClientDisconnectionFromServerEvent event)
+        {
+            // The next server may assign different IDs, fall back to the local ones until it tells us
+            AllomancyAPIImpl.INSTANCE.setRemoteMistingRegistry(null);
+            AllomancyAPIImpl.INSTANCE.setRemoteMetalRegistry(null);
+        }
+
         @SubscribeEvent
         public void registerModels(ModelRegistryEvent event)
         {
@@ -1,9 +1,9 @@
 package de.mineformers.investiture.allomancy.impl;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
 import de.mineformers.investiture.Investiture;
+import de.mineformers.investiture.allomancy.api.Allomancer;
 import de.mineformers.investiture.allomancy.api.misting.Misting;
+import de.mineformers.investiture.allomancy.impl.misting.AbstractMisting;
 import de.mineformers.investiture.allomancy.network.MistingUpdate;
 import de.mineformers.investiture.serialisation.Serialisation;
 import io.netty.buffer.ByteBuf;
@@ -12,9 +12,8 @@ import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
 
-import java.util.Optional;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * ${JDOC}
@@ -22,21 +21,30 @@ import java.util.stream.Collectors;
 public class AllomancerCompanion
 {
     private final Class<?> type;
-    private final String baseType;
-    private final Table<Misting, String, Optional<?>> oldValues = HashBasedTable.create();
+    private final Class<? extends Misting> baseType;
+    private final int typeId;
 
     public AllomancerCompanion(Class<?> type, Class<? extends Misting> baseType)
     {
         this.type = type;
-        this.baseType = baseType.getName();
+        this.baseType = baseType;
+        this.typeId = AllomancyAPIImpl.INSTANCE.getMistingId(baseType);
     }
 
     public MistingUpdate allFields(Misting instance, Entity entity)
     {
-        Set<Serialisation.FieldData> fields = Serialisation.INSTANCE.getNetFields(type, true);
+        BitSet fields = new BitSet();
+        fields.set(0, Serialisation.INSTANCE.getNetFields(type, true).size());
+        return update(instance, entity, fields);
+    }
+
+    private MistingUpdate update(Misting instance, Entity entity, BitSet fields)
+    {
         ByteBuf buffer = Unpooled.buffer();
         Serialisation.INSTANCE.serialiseFieldsFrom(instance, fields, buffer);
-        return new MistingUpdate(entity.getEntityId(), baseType, buffer.array());
+        byte[] data = new byte[buffer.readableBytes()];
+        buffer.readBytes(data);
+        return new MistingUpdate(entity.getEntityId(), typeId, data);
     }
 
     public void sendToAll(Misting instance, Entity entity)
@@ -50,28 +58,39 @@ public class AllomancerCompanion
             Investiture.net().sendTo((EntityPlayerMP) target, allFields(instance, entity));
     }
 
-    public void write(Misting instance, Entity entity)
+    public void write(Allomancer allomancer, Misting instance, Entity entity)
     {
         if (entity.world.isRemote)
             return;
-        Set<Serialisation.FieldData> fields =
-            Serialisation.INSTANCE.getNetFields(type, true)
-                                  .stream()
-                                  .filter(f ->
-                                          {
-                                              Object value = f.get(instance);
-                                              Optional<?> oldValue = oldValues.contains(instance, f.name) ? oldValues.get(instance, f.name)
-                                                                                                          : null;
-                                              return oldValue == null || !AllomancyAPIImpl.INSTANCE.equals(value, oldValue.orElse(null));
-                                          })
-                                  .collect(Collectors.toSet());
-        if (fields.isEmpty())
+        if (instance instanceof AbstractMisting)
+        {
+            BitSet dirty = ((AbstractMisting) instance).dirtyFields();
+            if (dirty.isEmpty())
+                return;
+            Investiture.net().sendToTracking(entity, update(instance, entity, dirty));
+            dirty.clear();
             return;
-        ByteBuf buffer = Unpooled.buffer();
-        Serialisation.INSTANCE.serialiseFieldsFrom(instance, fields, buffer);
-        Investiture.net().sendToTracking(entity, new MistingUpdate(entity.getEntityId(), baseType, buffer.array()));
-        for (Serialisation.FieldData field : fields)
-            oldValues.put(instance, field.name, Optional.ofNullable(field.get(instance)));
+        }
+        // Fall back to comparing against the last synchronised state for Mistings which do not track their changes
+        List<Serialisation.FieldData> fields = Serialisation.INSTANCE.getNetFields(type, true);
+        if (!(allomancer instanceof EntityAllomancer))
+        {
+            Investiture.net().sendToTracking(entity, allFields(instance, entity));
+            return;
+        }
+        Object[] snapshot = ((EntityAllomancer) allomancer).snapshot(baseType, fields.size());
+        BitSet changed = new BitSet();
+        for (int i = 0; i < fields.size(); i++)
+        {
+            Object value = fields.get(i).get(instance);
+            if (snapshot[i] == EntityAllomancer.UNSYNCHRONISED || !AllomancyAPIImpl.INSTANCE.equals(value, snapshot[i]))
+            {
+                changed.set(i);
+                snapshot[i] = value;
+            }
+        }
+        if (!changed.isEmpty())
+            Investiture.net().sendToTracking(entity, update(instance, entity, changed));
     }
 
     public void read(Misting instance, byte[] data)
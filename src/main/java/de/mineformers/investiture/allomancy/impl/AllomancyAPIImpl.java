@@ -13,6 +13,7 @@ import de.mineformers.investiture.allomancy.api.metal.Metals;
 import de.mineformers.investiture.allomancy.api.metal.stack.MetalStack;
 import de.mineformers.investiture.allomancy.api.misting.Inject;
 import de.mineformers.investiture.allomancy.api.misting.Misting;
+import de.mineformers.investiture.allomancy.api.misting.MistingDescriptor;
 import de.mineformers.investiture.allomancy.api.misting.mental.Rioter;
 import de.mineformers.investiture.allomancy.api.misting.mental.Soother;
 import de.mineformers.investiture.allomancy.api.misting.physical.Coinshot;
@@ -32,15 +33,20 @@ import de.mineformers.investiture.allomancy.impl.misting.physical.TineyeImpl;
 import de.mineformers.investiture.allomancy.impl.misting.temporal.*;
 import de.mineformers.investiture.allomancy.item.MetalItem;
 import de.mineformers.investiture.serialisation.Serialisation;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
 import net.minecraft.block.Block;
 import net.minecraft.block.material.Material;
 import net.minecraft.block.state.BlockWorldState;
+import net.minecraft.block.state.IBlockState;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.item.EntityItem;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
+import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.ITickable;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -70,11 +76,21 @@ public class AllomancyAPIImpl implements AllomancyAPI
     }
 
     Map<Class<? extends Misting>, MistingData> factories = new HashMap<>();
+    private List<Class<? extends Misting>> mistingIds = new ArrayList<>();
+    private TObjectIntMap<Class<?>> mistingIdLookup = new TObjectIntHashMap<>(16, 0.5f, -1);
+    /**
+     * Caches the result of {@link #getAssignableMistings(Class)} per type, replaced whenever a Misting type is registered.
+     */
+    private volatile ClassValue<long[]> assignableMistings = new AssignableMistings();
+    private final Map<Class<?>, MistingDescriptor> descriptors = new HashMap<>();
+    private volatile List<Class<? extends Misting>> remoteMistingIds;
+    private volatile Metal[] remoteMetals;
     private Map<Class<?>, BiPredicate<?, ?>> equalities = new HashMap<>();
     private Set<Predicate<ItemStack>> metallicItems = new HashSet<>();
     private Set<Predicate<BlockWorldState>> metallicBlocks = new HashSet<>();
     private Set<Predicate<Entity>> metallicEntities = new HashSet<>();
     private Set<MetalMapping> mappings = new HashSet<>();
+    private volatile BlockStateTable blockStates;
 
     private AllomancyAPIImpl()
     {
@@ -145,7 +161,196 @@ public class AllomancyAPIImpl implements AllomancyAPI
     @Override
     public <T extends Misting> void registerMisting(Class<T> type, MistingFactory<? extends T> factory)
     {
-        factories.put(type, new MistingData(type, factory));
+        // Active powers are synchronised as a bit mask, limiting the number of Misting types
+        if (!mistingIds.contains(type))
+        {
+            if (mistingIds.size() >= 64)
+                throw new IllegalStateException("Cannot register more than 64 Misting types, tried to register " + type.getName());
+            mistingIdLookup.put(type, mistingIds.size());
+            mistingIds.add(type);
+            assignableMistings = new AssignableMistings();
+        }
+        MistingData data = new MistingData(type, factory, getMistingId(type));
+        MistingData previous = factories.put(type, data);
+        if (previous != null)
+            descriptors.remove(previous.type);
+        descriptors.put(type, data.descriptor);
+        descriptors.put(data.type, data.descriptor);
+    }
+
+    @Nullable
+    @Override
+    public MistingDescriptor getDescriptor(Class<?> type)
+    {
+        return descriptors.get(type);
+    }
+
+    /**
+     * @param type the base interface of the Misting type
+     * @return the ID assigned to the Misting type on this side, -1 if it was never registered
+     */
+    public int getMistingId(Class<?> type)
+    {
+        return mistingIdLookup.get(type);
+    }
+
+    /**
+     * Resolves which registered Misting types can be used as the given type, e.g. all powers implementing a common interface.
+     * The result is computed once per type.
+     *
+     * @param type any type a Misting might be accessed as
+     * @return a bit mask with the bit corresponding to the ID of each registered Misting type assignable to the given type set
+     */
+    public long getAssignableMistings(Class<?> type)
+    {
+        return assignableMistings.get(type)[0];
+    }
+
+    /**
+     * @param id the ID assigned to the Misting type on this side
+     * @return the Misting type with the given ID, null if there is none
+     */
+    @Nullable
+    public Class<? extends Misting> getMistingType(int id)
+    {
+        return id >= 0 && id < mistingIds.size() ? mistingIds.get(id) : null;
+    }
+
+    /**
+     * @param types a collection of registered Misting types
+     * @return a bit mask with the bit corresponding to each type's ID set
+     */
+    public long toMistingMask(Collection<Class<? extends Misting>> types)
+    {
+        long mask = 0;
+        for (Class<? extends Misting> type : types)
+        {
+            int id = getMistingId(type);
+            if (id >= 0)
+                mask |= 1L << id;
+        }
+        return mask;
+    }
+
+    /**
+     * @return the names of all Misting types, ordered by their ID
+     */
+    public List<String> getMistingRegistry()
+    {
+        return mistingIds.stream().map(Class::getName).collect(Collectors.toList());
+    }
+
+    /**
+     * Adopts the Misting IDs of the server the client is connected to.
+     * Types the client does not know are skipped, messages referring to them will be ignored.
+     *
+     * @param names the names of the server's Misting types, ordered by their ID, or null to fall back to the local IDs
+     */
+    public void setRemoteMistingRegistry(@Nullable List<String> names)
+    {
+        if (names == null)
+        {
+            remoteMistingIds = null;
+            return;
+        }
+        List<Class<? extends Misting>> result = new ArrayList<>(names.size());
+        for (String name : names)
+            result.add(mistingIds.stream().filter(c -> c.getName().equals(name)).findFirst().orElse(null));
+        remoteMistingIds = Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @param type the base interface of the Misting type
+     * @return the ID the server assigned to the Misting type, -1 if it does not know the type
+     */
+    public int getRemoteMistingId(Class<? extends Misting> type)
+    {
+        List<Class<? extends Misting>> ids = remoteMistingIds;
+        return ids != null ? ids.indexOf(type) : getMistingId(type);
+    }
+
+    /**
+     * @param id the ID the server assigned to the Misting type
+     * @return the Misting type with the given ID, null if the client does not know it
+     */
+    @Nullable
+    public Class<? extends Misting> getRemoteMistingType(int id)
+    {
+        List<Class<? extends Misting>> ids = remoteMistingIds;
+        if (ids == null)
+            return getMistingType(id);
+        return id >= 0 && id < ids.size() ? ids.get(id) : null;
+    }
+
+    /**
+     * @param mask a bit mask of Misting IDs as assigned by the server
+     * @return a bit mask of the local IDs of all Misting types the client knows whose bit is set in the given mask
+     */
+    public long toLocalMistingMask(long mask)
+    {
+        if (remoteMistingIds == null)
+            return mask;
+        long result = 0;
+        while (mask != 0)
+        {
+            Class<? extends Misting> type = getRemoteMistingType(Long.numberOfTrailingZeros(mask));
+            if (type != null)
+                result |= 1L << getMistingId(type);
+            mask &= mask - 1;
+        }
+        return result;
+    }
+
+    /**
+     * @return the IDs of all metals, ordered by their ordinal
+     */
+    public List<String> getMetalRegistry()
+    {
+        List<String> result = new ArrayList<>(Metals.count());
+        for (int i = 0; i < Metals.count(); i++)
+            result.add(Metals.get(i).id());
+        return result;
+    }
+
+    /**
+     * Adopts the metal ordinals of the server the client is connected to.
+     * Metals the client does not know are skipped.
+     *
+     * @param ids the IDs of the server's metals, ordered by their ordinal, or null to fall back to the local ordinals
+     */
+    public void setRemoteMetalRegistry(@Nullable List<String> ids)
+    {
+        if (ids == null)
+        {
+            remoteMetals = null;
+            return;
+        }
+        Metal[] metals = new Metal[ids.size()];
+        for (int i = 0; i < metals.length; i++)
+        {
+            try
+            {
+                metals[i] = Metals.get(ids.get(i));
+            }
+            catch (IllegalArgumentException e)
+            {
+                metals[i] = null;
+            }
+        }
+        remoteMetals = metals;
+    }
+
+    /**
+     * @param ordinal the ordinal the server assigned to the metal
+     * @return the metal with the given ordinal, null if the client does not know it
+     */
+    @Nullable
+    public Metal getRemoteMetal(int ordinal)
+    {
+        Metal[] metals = remoteMetals;
+        if (metals == null)
+            return ordinal >= 0 && ordinal < Metals.count() ? Metals.get(ordinal) : null;
+        return ordinal >= 0 && ordinal < metals.length ? metals[ordinal] : null;
     }
 
     @Override
@@ -164,12 +369,62 @@ public class AllomancyAPIImpl implements AllomancyAPI
     public void registerMetallicBlock(Predicate<BlockWorldState> predicate)
     {
         metallicBlocks.add(predicate);
+        invalidateBlockStates();
+    }
+
+    @Override
+    public boolean isMetallic(World world, BlockPos pos)
+    {
+        int id = Block.getStateId(world.getBlockState(pos));
+        BlockStateTable table = blockStates();
+        if (table.needsContext(id))
+            return AllomancyAPI.super.isMetallic(world, pos);
+        return table.isMetallic(id);
+    }
+
+    @Override
+    public boolean isMetallic(IBlockState state)
+    {
+        int id = Block.getStateId(state);
+        BlockStateTable table = blockStates();
+        if (table.needsContext(id))
+            return AllomancyAPI.super.isMetallic(state);
+        return table.isMetallic(id);
+    }
+
+    /**
+     * Discards the pre-computed metallic block states, they will be computed again on the next query.
+     * Needs to be called whenever block state IDs may have changed.
+     */
+    public void invalidateBlockStates()
+    {
+        blockStates = null;
+    }
+
+    /**
+     * @return the pre-computed metallic block states, immutable and therefore safe to use from any thread once obtained
+     */
+    BlockStateTable getBlockStateTable()
+    {
+        return blockStates();
+    }
+
+    private BlockStateTable blockStates()
+    {
+        BlockStateTable table = blockStates;
+        if (table == null)
+        {
+            table = new BlockStateTable(metallicBlocks);
+            blockStates = table;
+        }
+        return table;
     }
 
     @Override
     public void registerMetallicEntity(Predicate<Entity> predicate)
     {
         metallicEntities.add(predicate);
+        MetallicEntityIndex.rebuildAll();
     }
 
     @Nonnull
@@ -226,6 +481,7 @@ public class AllomancyAPIImpl implements AllomancyAPI
 
     public void update(Allomancer allomancer, Entity entity)
     {
+        boolean syncMistings = !entity.world.isRemote && UpdateScheduler.isDue(entity, UpdateScheduler.Work.SYNC_MISTINGS);
         for (Class<? extends Misting> type : allomancer.powers())
         {
             allomancer.as(type).ifPresent(m ->
@@ -264,10 +520,21 @@ public class AllomancyAPIImpl implements AllomancyAPI
                                                       }
                                                   }
                                               }
-                                              if (!entity.world.isRemote)
-                                                  factories.get(type).companion.write(m, entity);
+                                              if (syncMistings)
+                                              {
+                                                  long start = System.nanoTime();
+                                                  factories.get(type).companion.write(allomancer, m, entity);
+                                                  UpdateScheduler.record(entity, UpdateScheduler.Work.SYNC_MISTINGS, start);
+                                              }
                                           });
         }
+        if (!entity.world.isRemote && allomancer.storage() instanceof SimpleMetalStorage &&
+            UpdateScheduler.isDue(entity, UpdateScheduler.Work.SYNC_STORAGE))
+        {
+            long start = System.nanoTime();
+            ((SimpleMetalStorage) allomancer.storage()).update();
+            UpdateScheduler.record(entity, UpdateScheduler.Work.SYNC_STORAGE, start);
+        }
     }
 
     public void read(Entity entity, Class<? extends Misting> type, byte[] data)
@@ -278,7 +545,142 @@ public class AllomancyAPIImpl implements AllomancyAPI
     @SuppressWarnings("unchecked")
     public <T> boolean equals(T a, T b)
     {
-        return (a == b) || ((BiPredicate<T, T>) Optional.ofNullable(equalities.get(a.getClass())).orElse(Objects::equals)).test(a, b);
+        if (a == b)
+            return true;
+        if (a == null || b == null)
+            return false;
+        return ((BiPredicate<T, T>) Optional.ofNullable(equalities.get(a.getClass())).orElse(Objects::equals)).test(a, b);
+    }
+
+    /**
+     * Classifies every registered block state by its ID as either metallic, not metallic or depending on the world.
+     * A block state depends on the world if any predicate accesses the position or tile entity it is tested against,
+     * if a predicate fails without world access or if states sharing the same ID disagree.
+     */
+    static class BlockStateTable
+    {
+        private static final int SIZE = 1 << 16;
+        private final long[] metallic = new long[SIZE >> 6];
+        private final long[] context = new long[SIZE >> 6];
+
+        BlockStateTable(Collection<Predicate<BlockWorldState>> predicates)
+        {
+            long[] known = new long[SIZE >> 6];
+            for (Block block : Block.REGISTRY)
+            {
+                for (IBlockState state : block.getBlockState().getValidStates())
+                {
+                    int id = Block.getStateId(state);
+                    if (id < 0 || id >= SIZE)
+                        continue;
+                    Probe probe = new Probe(state);
+                    boolean result = false;
+                    boolean contextual = false;
+                    for (Predicate<BlockWorldState> predicate : predicates)
+                    {
+                        probe.contextual = false;
+                        try
+                        {
+                            boolean matched = predicate.test(probe);
+                            // A predicate that looked at the world may answer differently for other blocks of the state, whatever it said here
+                            if (probe.contextual)
+                            {
+                                contextual = true;
+                            }
+                            else if (matched)
+                            {
+                                result = true;
+                                break;
+                            }
+                        }
+                        catch (RuntimeException e)
+                        {
+                            contextual = true;
+                        }
+                    }
+                    // Only a match that did not depend on the world holds for every block of the state
+                    contextual &= !result;
+                    if (contextual || (get(known, id) && get(metallic, id) != result))
+                        set(context, id);
+                    else if (result)
+                        set(metallic, id);
+                    set(known, id);
+                }
+            }
+            for (int i = 0; i < context.length; i++)
+                context[i] |= ~known[i];
+        }
+
+        boolean needsContext(int id)
+        {
+            return id < 0 || id >= SIZE || get(context, id);
+        }
+
+        boolean isMetallic(int id)
+        {
+            return get(metallic, id);
+        }
+
+        private static boolean get(long[] bits, int index)
+        {
+            return (bits[index >>> 6] & (1L << index)) != 0;
+        }
+
+        private static void set(long[] bits, int index)
+        {
+            bits[index >>> 6] |= 1L << index;
+        }
+
+        /**
+         * Provides a block state to the predicates without any world, recording whether they tried to access it anyway.
+         */
+        private static class Probe extends BlockWorldState
+        {
+            private final IBlockState state;
+            boolean contextual;
+
+            Probe(IBlockState state)
+            {
+                super(null, BlockPos.ORIGIN, false);
+                this.state = state;
+            }
+
+            @Nonnull
+            @Override
+            public IBlockState getBlockState()
+            {
+                return state;
+            }
+
+            @Nullable
+            @Override
+            public TileEntity getTileEntity()
+            {
+                contextual = true;
+                return null;
+            }
+
+            @Nonnull
+            @Override
+            public BlockPos getPos()
+            {
+                contextual = true;
+                return super.getPos();
+            }
+        }
+    }
+
+    private class AssignableMistings extends ClassValue<long[]>
+    {
+        @Override
+        protected long[] computeValue(Class<?> type)
+        {
+            long result = 0;
+            for (int id = 0; id < mistingIds.size(); id++)
+                if (type.isAssignableFrom(mistingIds.get(id)))
+                    result |= 1L << id;
+            return new long[] {result};
+        }
     }
 
     static class MistingData
@@ -287,8 +689,9 @@ public class AllomancyAPIImpl implements AllomancyAPI
         private final MistingFactory<?> factory;
         final Collection<Field> injectedFields;
         final AllomancerCompanion companion;
+        final MistingDescriptor descriptor;
 
-        MistingData(Class<? extends Misting> baseType, MistingFactory<?> factory)
+        MistingData(Class<? extends Misting> baseType, MistingFactory<?> factory, int id)
         {
             this.factory = factory;
             type = factory.referenceClass();
@@ -302,6 +705,7 @@ public class AllomancyAPIImpl implements AllomancyAPI
             injectedFields.forEach(f -> f.setAccessible(true));
             this.companion = new AllomancerCompanion(type, baseType);
             Serialisation.INSTANCE.registerClass(type, true);
+            this.descriptor = new MistingDescriptor(baseType, type, id, factory, Serialisation.INSTANCE.codec(type));
         }
 
         void inject(Misting instance, Map<Class<?>, Object> values)
@@ -1,13 +1,16 @@
 package de.mineformers.investiture.allomancy.impl;
 
+import de.mineformers.investiture.Investiture;
 import de.mineformers.investiture.allomancy.Allomancy;
 import de.mineformers.investiture.allomancy.api.Allomancer;
 import de.mineformers.investiture.allomancy.api.Capabilities;
 import de.mineformers.investiture.allomancy.api.metal.stack.MetalStackMappingProvider;
 import de.mineformers.investiture.allomancy.api.metal.stack.MetalStackProvider;
 import de.mineformers.investiture.allomancy.api.misting.Misting;
+import de.mineformers.investiture.allomancy.network.AllomancyRegistryUpdate;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagCompound;
@@ -80,21 +83,33 @@ public class CoreEventHandler
     @SubscribeEvent
     public void onJoin(EntityJoinWorldEvent event)
     {
+        // The client needs to know the Misting IDs before receiving any updates
+        if (event.getEntity() instanceof EntityPlayerMP)
+            Investiture.net().sendTo((EntityPlayerMP) event.getEntity(),
+                                     new AllomancyRegistryUpdate(AllomancyAPIImpl.INSTANCE.getMistingRegistry(),
+                                                                  AllomancyAPIImpl.INSTANCE.getMetalRegistry()));
         AllomancyAPIImpl.INSTANCE.toAllomancer(event.getEntity())
                                  .ifPresent(a ->
                                             {
                                                 if (a instanceof EntityAllomancer)
                                                 {
-                                                    for (Class<? extends Misting> type : a.powers())
-                                                    {
-                                                        a.as(type).ifPresent(
-                                                            m -> AllomancyAPIImpl.INSTANCE.factories
-                                                                .get(type).companion
-                                                                .sendToAll(m, ((EntityAllomancer) a).entity));
-                                                    }
-                                                    a.activePowers()
-                                                     .forEach(p -> a.as(p).ifPresent(Misting::startBurning));
-                                                    ((EntityAllomancer) a).sync();
+                                                    EntityAllomancer allomancer = (EntityAllomancer) a;
+                                                    allomancer.modify(
+                                                        m ->
+                                                        {
+                                                            for (Class<? extends Misting> type : allomancer.powers())
+                                                            {
+                                                                allomancer.as(type).ifPresent(
+                                                                    p -> AllomancyAPIImpl.INSTANCE.factories
+                                                                        .get(type).companion
+                                                                        .sendToAll(p, allomancer.entity));
+                                                            }
+                                                            allomancer.activePowers()
+                                                                      .forEach(p -> allomancer.as(p).ifPresent(Misting::startBurning));
+                                                            allomancer.sync();
+                                                        });
+                                                    if (event.getEntity() instanceof EntityPlayer)
+                                                        allomancer.sync((EntityPlayer) event.getEntity());
                                                 }
                                             });
     }
@@ -4,6 +4,7 @@ import de.mineformers.investiture.Investiture;
 import de.mineformers.investiture.allomancy.api.Allomancer;
 import de.mineformers.investiture.allomancy.api.metal.MetalStorage;
 import de.mineformers.investiture.allomancy.api.misting.Misting;
+import de.mineformers.investiture.allomancy.network.AllomancerDelta;
 import de.mineformers.investiture.allomancy.network.AllomancerUpdate;
 import de.mineformers.investiture.serialisation.Serialisation;
 import net.minecraft.entity.Entity;
@@ -12,6 +13,7 @@ import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.nbt.NBTTagList;
 import net.minecraft.nbt.NBTTagString;
+import net.minecraft.world.WorldServer;
 import net.minecraftforge.common.util.Constants;
 import net.minecraftforge.common.util.INBTSerializable;
 
@@ -19,6 +21,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * ${JDOC}
@@ -27,20 +30,52 @@ import java.util.*;
 public class EntityAllomancer implements Allomancer, INBTSerializable<NBTTagCompound>
 {
     public final Entity entity;
-    private final HashMap<Class<? extends Misting>, Misting> powers = new HashMap<>();
-    private final Set<Class<? extends Misting>> activePowers = new HashSet<>();
+    /**
+     * Powers indexed by the ID of their Misting type, see {@link AllomancyAPIImpl#getMistingId(Class)}.
+     */
+    private final Misting[] powers = new Misting[Long.SIZE];
+    private long powerMask;
+    private long activeMask;
+    /**
+     * The active powers as last sent to tracking clients, used to only send what changed.
+     */
+    private long syncedActiveMask;
+    private final Set<Class<? extends Misting>> powerView = new MistingSet(false);
+    private final Set<Class<? extends Misting>> activeView = new MistingSet(true);
     private SimpleMetalStorage storage = new SimpleMetalStorage(this);
+    private final MetalSense metalSense;
+    /**
+     * Marks entries of a snapshot which have not been synchronised yet.
+     */
+    static final Object UNSYNCHRONISED = new Object();
+    /**
+     * The snapshots of the powers' synchronised fields, keyed by type rather than instance, so there is at most one per power the entity has.
+     * Entries are removed along with their power and nothing outside of this instance refers to them,
+     * granting and taking powers repeatedly therefore does not retain anything.
+     */
+    private final Map<Class<? extends Misting>, Object[]> snapshots = new HashMap<>();
+    private int modifications;
+    private boolean syncPending;
+    /**
+     * The players whose sync requests were answered in the tick given by the time, see {@link #requestSync(EntityPlayer)}.
+     */
+    private long syncRequestTime = -1;
+    private final Set<EntityPlayer> syncRequesters = new HashSet<>();
 
     public EntityAllomancer(Entity entity)
     {
         this.entity = entity;
+        this.metalSense = new MetalSense(entity);
     }
 
     @Nonnull
     @Override
     public <T extends Misting> Optional<T> as(Class<T> type)
     {
-        return powers().stream().filter(type::isAssignableFrom).map(powers::get).map(type::cast).findFirst();
+        long candidates = AllomancyAPIImpl.INSTANCE.getAssignableMistings(type) & powerMask;
+        if (candidates == 0)
+            return Optional.empty();
+        return Optional.of(type.cast(powers[Long.numberOfTrailingZeros(candidates)]));
     }
 
     @Nullable
@@ -51,10 +86,12 @@ public class EntityAllomancer implements Allomancer, INBTSerializable<NBTTagComp
             return as(type).get();
         else
         {
-            T instance = AllomancyAPIImpl.INSTANCE.instantiate(type, this, entity);
+            int id = AllomancyAPIImpl.INSTANCE.getMistingId(type);
+            T instance = id >= 0 ? AllomancyAPIImpl.INSTANCE.instantiate(type, this, entity) : null;
             if (instance != null)
             {
-                powers.put(type, instance);
+                powers[id] = instance;
+                powerMask |= 1L << id;
                 sync();
                 AllomancyAPIImpl.INSTANCE.factories.get(type).companion.sendToAll(instance, entity);
             }
@@ -62,15 +99,36 @@ public class EntityAllomancer implements Allomancer, INBTSerializable<NBTTagComp
         }
     }
 
+    @Override
+    public void modify(Consumer<? super Allomancer> modification)
+    {
+        modifications++;
+        try
+        {
+            modification.accept(this);
+        }
+        finally
+        {
+            if (--modifications == 0 && syncPending)
+            {
+                syncPending = false;
+                sync();
+            }
+        }
+    }
+
     @Override
     public boolean takePower(Class<? extends Misting> type)
     {
-        if (!powers.containsKey(type))
+        int id = AllomancyAPIImpl.INSTANCE.getMistingId(type);
+        if (id < 0 || (powerMask & (1L << id)) == 0)
         {
             return false;
         }
-        powers.remove(type);
-        activePowers.remove(type);
+        powers[id] = null;
+        powerMask &= ~(1L << id);
+        activeMask &= ~(1L << id);
+        snapshots.remove(type);
         sync();
         return true;
     }
@@ -78,27 +136,31 @@ public class EntityAllomancer implements Allomancer, INBTSerializable<NBTTagComp
     @Override
     public void activate(Class<? extends Misting> type)
     {
-        if (activePowers.contains(type))
+        int id = AllomancyAPIImpl.INSTANCE.getMistingId(type);
+        if (id < 0 || (activeMask & (1L << id)) != 0 || powers[id] == null)
             return;
-        as(type).ifPresent(m ->
-                           {
-                               activePowers.add(type);
-                               m.startBurning();
-                               sync();
-                           });
+        activeMask |= 1L << id;
+        powers[id].startBurning();
+        sync();
     }
 
     @Override
     public void deactivate(Class<? extends Misting> type)
     {
-        if (!activePowers.contains(type))
+        int id = AllomancyAPIImpl.INSTANCE.getMistingId(type);
+        if (id < 0 || (activeMask & (1L << id)) == 0 || powers[id] == null)
             return;
-        as(type).ifPresent(m ->
-                           {
-                               activePowers.remove(type);
-                               m.stopBurning();
-                               sync();
-                           });
+        activeMask &= ~(1L << id);
+        powers[id].stopBurning();
+        sync();
+    }
+
+    /**
+     * @return the metals this Allomancer senses around itself, shared by all its powers
+     */
+    public MetalSense metalSense()
+    {
+        return metalSense;
     }
 
     @Override
@@ -111,24 +173,69 @@ public class EntityAllomancer implements Allomancer, INBTSerializable<NBTTagComp
     @Override
     public Collection<Class<? extends Misting>> powers()
     {
-        return powers.keySet();
+        return powerView;
     }
 
     @Nonnull
     @Override
     public Collection<Class<? extends Misting>> activePowers()
     {
-        return Collections.unmodifiableSet(activePowers);
+        return activeView;
+    }
+
+    /**
+     * @return a bit mask with the bit corresponding to the ID of each active power set
+     */
+    public long getActivePowerMask()
+    {
+        return activeMask;
     }
 
     public void setActivePowers(Set<Class<? extends Misting>> activePowers)
     {
-        Set<Class<? extends Misting>> old = new HashSet<>();
-        old.addAll(this.activePowers);
-        this.activePowers.clear();
-        this.activePowers.addAll(activePowers);
-        activePowers.stream().filter(c -> !old.contains(c)).forEach(p -> as(p).ifPresent(Misting::startBurning));
-        old.stream().filter(c -> !activePowers.contains(c)).forEach(p -> as(p).ifPresent(Misting::stopBurning));
+        setActivePowers(AllomancyAPIImpl.INSTANCE.toMistingMask(activePowers));
+    }
+
+    /**
+     * @param mask a bit mask with the bit corresponding to the ID of each active power set
+     */
+    public void setActivePowers(long mask)
+    {
+        long old = activeMask;
+        activeMask = mask;
+        forEachPower(activeMask & ~old, Misting::startBurning);
+        forEachPower(old & ~activeMask, Misting::stopBurning);
+    }
+
+    private void forEachPower(long mask, Consumer<Misting> action)
+    {
+        while (mask != 0)
+        {
+            Misting misting = powers[Long.numberOfTrailingZeros(mask)];
+            if (misting != null)
+                action.accept(misting);
+            mask &= mask - 1;
+        }
+    }
+
+    /**
+     * Provides the values of a power's fields as they were last synchronised with clients.
+     * The snapshot lives as long as the power, it is discarded when the power is taken or replaced by loading from NBT.
+     *
+     * @param type the type of the power
+     * @param size the number of synchronised fields of the power
+     * @return the snapshot of the power's synchronised fields, with {@link #UNSYNCHRONISED} for values that were never sent
+     */
+    Object[] snapshot(Class<? extends Misting> type, int size)
+    {
+        Object[] snapshot = snapshots.get(type);
+        if (snapshot == null || snapshot.length != size)
+        {
+            snapshot = new Object[size];
+            Arrays.fill(snapshot, UNSYNCHRONISED);
+            snapshots.put(type, snapshot);
+        }
+        return snapshot;
     }
 
     public void setStorage(SimpleMetalStorage storage)
@@ -136,15 +243,56 @@ public class EntityAllomancer implements Allomancer, INBTSerializable<NBTTagComp
         this.storage = storage;
     }
 
+    /**
+     * Sends the changes to the active powers to all tracking clients, along with the version of the storage.
+     * Clients which find their copy of the storage outdated will ask for the full state.
+     */
     public void sync()
     {
-        Investiture.net().sendToTracking(entity, new AllomancerUpdate(entity.getEntityId(), activePowers, storage));
+        if (modifications > 0)
+        {
+            syncPending = true;
+            return;
+        }
+        long activated = activeMask & ~syncedActiveMask;
+        long deactivated = syncedActiveMask & ~activeMask;
+        if (activated == 0 && deactivated == 0)
+            return;
+        syncedActiveMask = activeMask;
+        Investiture.net().sendToTracking(entity, new AllomancerDelta(entity.getEntityId(), activated, deactivated, storage.version));
     }
 
+    /**
+     * Sends the full state of this Allomancer to a single client, e.g. when it starts tracking the entity.
+     *
+     * @param player the player to send the state to
+     */
     public void sync(EntityPlayer player)
     {
         if (!player.world.isRemote)
-            Investiture.net().sendTo((EntityPlayerMP) player, new AllomancerUpdate(entity.getEntityId(), activePowers, storage));
+            Investiture.net().sendTo((EntityPlayerMP) player, new AllomancerUpdate(entity.getEntityId(), activeMask, storage));
+    }
+
+    /**
+     * Answers a client's request for the full state of this Allomancer.
+     * Only the entity itself and players tracking it are answered, and each of them at most once per tick.
+     *
+     * @param player the player requesting the state
+     */
+    public void requestSync(EntityPlayer player)
+    {
+        if (!(entity.world instanceof WorldServer) || player.world != entity.world)
+            return;
+        long now = entity.world.getTotalWorldTime();
+        if (now != syncRequestTime)
+        {
+            syncRequestTime = now;
+            syncRequesters.clear();
+        }
+        if (!syncRequesters.add(player))
+            return;
+        if (player == entity || ((WorldServer) entity.world).getEntityTracker().getTrackingPlayers(entity).contains(player))
+            sync(player);
     }
 
     @Override
@@ -152,16 +300,17 @@ public class EntityAllomancer implements Allomancer, INBTSerializable<NBTTagComp
     {
         NBTTagCompound result = new NBTTagCompound();
         NBTTagCompound mistings = new NBTTagCompound();
-        for (Map.Entry<Class<? extends Misting>, Misting> misting : powers.entrySet())
+        for (Class<? extends Misting> type : powerView)
         {
+            Misting misting = powers[AllomancyAPIImpl.INSTANCE.getMistingId(type)];
             NBTTagCompound mistingData = new NBTTagCompound();
-            Serialisation.INSTANCE.serialise(misting.getValue(), mistingData);
-            mistingData.setString("Allomancy$MistingClass", misting.getKey().getName());
-            mistings.setTag(misting.getValue().getClass().getSimpleName(), mistingData);
+            Serialisation.INSTANCE.serialise(misting, mistingData);
+            mistingData.setString("Allomancy$MistingClass", type.getName());
+            mistings.setTag(misting.getClass().getSimpleName(), mistingData);
         }
         result.setTag("Mistings", mistings);
         NBTTagList activePowers = new NBTTagList();
-        for (Class<? extends Misting> power : this.activePowers)
+        for (Class<? extends Misting> power : activeView)
         {
             activePowers.appendTag(new NBTTagString(power.getName()));
         }
@@ -175,17 +324,21 @@ public class EntityAllomancer implements Allomancer, INBTSerializable<NBTTagComp
     public void deserializeNBT(NBTTagCompound nbt)
     {
         NBTTagCompound mistings = nbt.getCompoundTag("Mistings");
-        powers.clear();
+        Arrays.fill(powers, null);
+        powerMask = 0;
+        snapshots.clear();
         for (String misting : mistings.getKeySet())
         {
             NBTTagCompound mistingData = mistings.getCompoundTag(misting);
             try
             {
                 Class<? extends Misting> type = (Class<? extends Misting>) Class.forName(mistingData.getString("Allomancy$MistingClass"));
-                Misting m = AllomancyAPIImpl.INSTANCE.instantiate(type, this, entity);
+                int id = AllomancyAPIImpl.INSTANCE.getMistingId(type);
+                Misting m = id >= 0 ? AllomancyAPIImpl.INSTANCE.instantiate(type, this, entity) : null;
                 if (m != null)
                 {
-                    powers.put(type, m);
+                    powers[id] = m;
+                    powerMask |= 1L << id;
                     Serialisation.INSTANCE.deserialise(mistingData, m);
                 }
             }
@@ -195,14 +348,15 @@ public class EntityAllomancer implements Allomancer, INBTSerializable<NBTTagComp
             }
         }
         NBTTagList activePowers = nbt.getTagList("ActivePowers", Constants.NBT.TAG_STRING);
-        this.activePowers.clear();
+        activeMask = 0;
         for (int i = 0; i < activePowers.tagCount(); i++)
         {
             try
             {
                 Class<? extends Misting> type = (Class<? extends Misting>) Class.forName(activePowers.getStringTagAt(i));
-                if (is(type))
-                    this.activePowers.add(type);
+                int id = AllomancyAPIImpl.INSTANCE.getMistingId(type);
+                if (id >= 0 && (powerMask & (1L << id)) != 0)
+                    activeMask |= 1L << id;
             }
             catch (Exception e)
             {
@@ -211,4 +365,62 @@ public class EntityAllomancer implements Allomancer, INBTSerializable<NBTTagComp
         }
         storage.deserializeNBT(nbt.getCompoundTag("Storage"));
     }
+
+    /**
+     * A read-only view of the Misting types whose bits are set in either the power or the active power mask.
+     */
+    private class MistingSet extends AbstractSet<Class<? extends Misting>>
+    {
+        private final boolean active;
+
+        MistingSet(boolean active)
+        {
+            this.active = active;
+        }
+
+        private long mask()
+        {
+            return active ? activeMask : powerMask;
+        }
+
+        @Override
+        public boolean contains(Object o)
+        {
+            if (!(o instanceof Class))
+                return false;
+            int id = AllomancyAPIImpl.INSTANCE.getMistingId((Class<?>) o);
+            return id >= 0 && (mask() & (1L << id)) != 0;
+        }
+
+        @Override
+        public int size()
+        {
+            return Long.bitCount(mask());
+        }
+
+        @Override
+        public Iterator<Class<? extends Misting>> iterator()
+        {
+            return new Iterator<Class<? extends Misting>>()
+            {
+                private long remaining = mask();
+
+                @Override
+                public boolean hasNext()
+                {
+                    return remaining != 0;
+                }
+
+                @Override
+                public Class<? extends Misting> next()
+                {
+                    if (remaining == 0)
+                        throw new NoSuchElementException();
+                    int id = Long.numberOfTrailingZeros(remaining);
+                    remaining &= remaining - 1;
+                    return AllomancyAPIImpl.INSTANCE.getMistingType(id);
+                }
+            };
+        }
+    }
 }
@@ -0,0 +1,267 @@
+package de.mineformers.investiture.allomancy.impl;
+
+import de.mineformers.investiture.allomancy.AllomancyConfig;
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
+
+import javax.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The metallic blocks and entities an Allomancer senses around itself.
+ * Owned by the Allomancer and shared by all powers relying on it, so the surroundings are scanned at most once per tick.
+ * <p>
+ * The sensed blocks are kept between scans. When the Allomancer moves, only the slabs entering and leaving the range are processed,
+ * and chunks are only collected again if their version in the {@link MetallicBlockIndex} changed.
+ * <p>
+ * The range is a sphere around the centre of the Allomancer. Blocks inside the detail range are sensed individually,
+ * blocks further away are grouped into one {@link Cluster} per section to cut down on the number of targets.
+ */
+public class MetalSense
+{
+    private final Entity entity;
+    /**
+     * All metallic blocks in the cube around the sphere, the sensed blocks and clusters are derived from them after every scan.
+     */
+    private final Set<BlockPos> candidates = new HashSet<>();
+    private final Set<BlockPos> blocks = new HashSet<>();
+    private final TLongObjectMap<Cluster> clusters = new TLongObjectHashMap<>();
+    private final Set<Entity> entities = new HashSet<>();
+    private long lastUpdate = -1;
+    /**
+     * The world and the minimum corner of the range the blocks were last collected for.
+     */
+    private World window;
+    private BlockPos windowMin;
+    private int windowRadius;
+    private final TLongIntMap chunkVersions = new TLongIntHashMap();
+
+    public MetalSense(Entity entity)
+    {
+        this.entity = entity;
+    }
+
+    /**
+     * Scans the surroundings if this did not happen yet in the current tick and the scan is due according to the {@link UpdateScheduler}.
+     * Any power using the sense should call this every tick it is active.
+     */
+    public void update()
+    {
+        long now = entity.world.getTotalWorldTime();
+        if (now == lastUpdate)
+            return;
+        lastUpdate = now;
+        if (!UpdateScheduler.isDue(entity, UpdateScheduler.Work.SCAN_METALS))
+            return;
+        long start = System.nanoTime();
+        double range = AllomancyConfig.metalSense.range;
+        Vec3d centre = centre();
+        entity.world.profiler.startSection("investiture:find_metals_" + entity.world.isRemote);
+        entity.world.profiler.startSection("blocks");
+        int radius = (int) Math.ceil(range);
+        scanBlocks(new BlockPos(centre).add(-radius, -radius, -radius), radius);
+        entity.world.profiler.endSection();
+        entity.world.profiler.startSection("clusters");
+        updateTargets(centre, range, Math.min(range, AllomancyConfig.metalSense.detailRange));
+        entity.world.profiler.endSection();
+        entity.world.profiler.startSection("entities");
+        entities.clear();
+        MetallicEntityIndex.from(entity.world).collect(new AxisAlignedBB(centre.x - range, centre.y - range, centre.z - range,
+                                                                         centre.x + range, centre.y + range, centre.z + range),
+                                                       entity, entities);
+        entities.removeIf(e -> !inRange(e, centre, range));
+        entity.world.profiler.endSection();
+        entity.world.profiler.endSection();
+        UpdateScheduler.record(entity, UpdateScheduler.Work.SCAN_METALS, start);
+    }
+
+    private Vec3d centre()
+    {
+        return entity.getPositionVector().addVector(0, entity.height / 2, 0);
+    }
+
+    private static boolean inRange(Entity target, Vec3d centre, double range)
+    {
+        return target.getPositionVector().addVector(0, target.height / 2, 0).squareDistanceTo(centre) <= range * range;
+    }
+
+    private void scanBlocks(BlockPos min, int radius)
+    {
+        // Sections scanned in the background are published at the start of a tick and bump the version of their chunk,
+        // which makes them get collected below
+        MetallicBlockIndex index = MetallicBlockIndex.from(entity.world);
+        BlockPos max = min.add(2 * radius, 2 * radius, 2 * radius);
+        int dx = windowMin != null ? min.getX() - windowMin.getX() : 0;
+        int dy = windowMin != null ? min.getY() - windowMin.getY() : 0;
+        int dz = windowMin != null ? min.getZ() - windowMin.getZ() : 0;
+        // Moving further than the range leaves no overlap, which makes a full rescan the cheaper option
+        if (window != entity.world || windowRadius != radius || Math.max(Math.abs(dx), Math.max(Math.abs(dy), Math.abs(dz))) > radius)
+        {
+            candidates.clear();
+            index.collect(min, max, candidates);
+        }
+        else
+        {
+            // Drop blocks which left the range or whose chunk changed, the latter are collected again below
+            candidates.removeIf(p -> p.getX() < min.getX() || p.getY() < min.getY() || p.getZ() < min.getZ() ||
+                                 p.getX() > max.getX() || p.getY() > max.getY() || p.getZ() > max.getZ() ||
+                                 chunkVersions.get(ChunkPos.asLong(p.getX() >> 4, p.getZ() >> 4)) !=
+                                 index.version(p.getX() >> 4, p.getZ() >> 4));
+            for (int chunkX = min.getX() >> 4; chunkX <= max.getX() >> 4; chunkX++)
+                for (int chunkZ = min.getZ() >> 4; chunkZ <= max.getZ() >> 4; chunkZ++)
+                    if (!chunkVersions.containsKey(ChunkPos.asLong(chunkX, chunkZ)) ||
+                        chunkVersions.get(ChunkPos.asLong(chunkX, chunkZ)) != index.version(chunkX, chunkZ))
+                        index.collect(new BlockPos(Math.max(min.getX(), chunkX << 4), min.getY(), Math.max(min.getZ(), chunkZ << 4)),
+                                      new BlockPos(Math.min(max.getX(), (chunkX << 4) | 15), max.getY(), Math.min(max.getZ(), (chunkZ << 4) | 15)),
+                                      candidates);
+            // Collect the slabs which entered the range, each axis only covers what the previous axes have not
+            BlockPos oldMin = windowMin;
+            BlockPos oldMax = windowMin.add(2 * radius, 2 * radius, 2 * radius);
+            if (dx != 0)
+                index.collect(new BlockPos(dx > 0 ? oldMax.getX() + 1 : min.getX(), min.getY(), min.getZ()),
+                              new BlockPos(dx > 0 ? max.getX() : oldMin.getX() - 1, max.getY(), max.getZ()), candidates);
+            int overlapMinX = Math.max(min.getX(), oldMin.getX());
+            int overlapMaxX = Math.min(max.getX(), oldMax.getX());
+            if (dy != 0)
+                index.collect(new BlockPos(overlapMinX, dy > 0 ? oldMax.getY() + 1 : min.getY(), min.getZ()),
+                              new BlockPos(overlapMaxX, dy > 0 ? max.getY() : oldMin.getY() - 1, max.getZ()), candidates);
+            int overlapMinY = Math.max(min.getY(), oldMin.getY());
+            int overlapMaxY = Math.min(max.getY(), oldMax.getY());
+            if (dz != 0)
+                index.collect(new BlockPos(overlapMinX, overlapMinY, dz > 0 ? oldMax.getZ() + 1 : min.getZ()),
+                              new BlockPos(overlapMaxX, overlapMaxY, dz > 0 ? max.getZ() : oldMin.getZ() - 1), candidates);
+        }
+        window = entity.world;
+        windowMin = min;
+        windowRadius = radius;
+        chunkVersions.clear();
+        for (int chunkX = min.getX() >> 4; chunkX <= max.getX() >> 4; chunkX++)
+            for (int chunkZ = min.getZ() >> 4; chunkZ <= max.getZ() >> 4; chunkZ++)
+                chunkVersions.put(ChunkPos.asLong(chunkX, chunkZ), index.version(chunkX, chunkZ));
+    }
+
+    private void updateTargets(Vec3d centre, double range, double detailRange)
+    {
+        blocks.clear();
+        clusters.clear();
+        for (BlockPos pos : candidates)
+        {
+            double distance = centre.squareDistanceTo(pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5);
+            if (distance <= detailRange * detailRange)
+            {
+                blocks.add(pos);
+            }
+            else if (distance <= range * range)
+            {
+                long key = sectionKey(pos);
+                Cluster cluster = clusters.get(key);
+                if (cluster == null)
+                    clusters.put(key, cluster = new Cluster(key));
+                cluster.add(pos);
+            }
+        }
+    }
+
+    private static long sectionKey(BlockPos pos)
+    {
+        return new BlockPos(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4).toLong();
+    }
+
+    /**
+     * @param pos the position of a block
+     * @return the cluster the block is part of, <code>null</code> if it is no metallic block sensed from a distance
+     */
+    @Nullable
+    public Cluster cluster(BlockPos pos)
+    {
+        Cluster cluster = clusters.get(sectionKey(pos));
+        if (cluster == null || !candidates.contains(pos) || blocks.contains(pos))
+            return null;
+        Vec3d centre = centre();
+        double range = AllomancyConfig.metalSense.range;
+        return centre.squareDistanceTo(pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5) <= range * range ? cluster : null;
+    }
+
+    /**
+     * @return a view of the positions of all metallic blocks in the detail range as of the last scan
+     */
+    public Collection<BlockPos> blocks()
+    {
+        return Collections.unmodifiableSet(blocks);
+    }
+
+    /**
+     * @return a view of the clusters of metallic blocks outside the detail range as of the last scan
+     */
+    public Collection<Cluster> clusters()
+    {
+        return Collections.unmodifiableCollection(clusters.valueCollection());
+    }
+
+    /**
+     * @return a view of all metallic entities in range as of the last scan
+     */
+    public Collection<Entity> entities()
+    {
+        return Collections.unmodifiableSet(entities);
+    }
+
+    /**
+     * The metallic blocks of a section outside the detail range, targeted as a whole at their average position.
+     */
+    public static class Cluster
+    {
+        private final long section;
+        private double x, y, z;
+        private int weight;
+
+        Cluster(long section)
+        {
+            this.section = section;
+        }
+
+        void add(BlockPos pos)
+        {
+            x += pos.getX() + 0.5;
+            y += pos.getY() + 0.5;
+            z += pos.getZ() + 0.5;
+            weight++;
+        }
+
+        /**
+         * @return the packed position of the section the cluster covers, stable between scans
+         */
+        public long section()
+        {
+            return section;
+        }
+
+        /**
+         * @return the average position of the blocks in the cluster
+         */
+        public Vec3d centre()
+        {
+            return new Vec3d(x / weight, y / weight, z / weight);
+        }
+
+        /**
+         * @return the number of blocks in the cluster
+         */
+        public int weight()
+        {
+            return weight;
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package de.mineformers.investiture.allomancy.impl;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.mineformers.investiture.Investiture;
+import de.mineformers.investiture.allomancy.AllomancyConfig;
+import de.mineformers.investiture.util.Reflection;
+import de.mineformers.investiture.util.WorldEventAdapter;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.BitArray;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.BlockStateContainer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.IBlockStatePalette;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import net.minecraftforge.event.terraingen.PopulateChunkEvent;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps track of the metallic blocks of a world, grouped by the 16x16x16 sections of all loaded chunks.
+ * Sections are indexed lazily when they are first queried and are kept up to date through the world's block change notifications.
+ * <p>
+ * Indexing a section copies its packed block states and their palette on the main thread, they are decoded and checked on a pool of worker threads.
+ * Finished scans are published at the start of the next tick of their side, until then the section appears to be empty.
+ * <p>
+ * Servers only notify the index of block changes made with flag 2 in chunks that are already populated. Chunks a populator wrote into are
+ * invalidated at the start of the next tick, so generated blocks are picked up. Changes made without flag 2 are not noticed though,
+ * the affected section stays outdated until the block is changed again with a notification or the chunk is reloaded.
+ */
+@Mod.EventBusSubscriber(modid = Investiture.MOD_ID)
+public class MetallicBlockIndex
+{
+    private static final Map<World, MetallicBlockIndex> INDICES = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final MethodHandle GET_STORAGE;
+    private static final MethodHandle GET_PALETTE;
+    private static ExecutorService executor;
+    private static int executorThreads;
+
+    static
+    {
+        GET_STORAGE = Reflection.getterHandle(BlockStateContainer.class)
+                                .srgName("field_186021_b")
+                                .build();
+        GET_PALETTE = Reflection.getterHandle(BlockStateContainer.class)
+                                .srgName("field_186022_c")
+                                .build();
+    }
+
+    /**
+     * @return the pool scans are run on, <code>null</code> if they should run on the calling thread
+     */
+    @Nullable
+    private static synchronized ExecutorService executor()
+    {
+        int threads = AllomancyConfig.metalSense.scanThreads;
+        if (executor != null && threads != executorThreads)
+        {
+            executor.shutdown();
+            executor = null;
+        }
+        if (executor == null && threads > 0)
+        {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("Investiture Metal Scanner #%d")
+                                                                                       .setDaemon(true)
+                                                                                       .build());
+            executorThreads = threads;
+        }
+        return executor;
+    }
+
+    public static MetallicBlockIndex from(World world)
+    {
+        MetallicBlockIndex index = INDICES.get(world);
+        if (index == null)
+        {
+            index = new MetallicBlockIndex(world);
+            world.addEventListener(index.new Listener());
+            INDICES.put(world, index);
+        }
+        return index;
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event)
+    {
+        INDICES.remove(event.getWorld());
+    }
+
+    @SubscribeEvent
+    public static void onWorldTick(TickEvent.WorldTickEvent event)
+    {
+        if (event.phase != TickEvent.Phase.START)
+            return;
+        MetallicBlockIndex index = INDICES.get(event.world);
+        if (index != null)
+        {
+            index.invalidatePopulated();
+            index.publishCompleted();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPopulate(PopulateChunkEvent.Post event)
+    {
+        // Mods generate their features after this event, so the columns are only invalidated at the start of the next tick
+        MetallicBlockIndex index = INDICES.get(event.getWorld());
+        if (index != null)
+            index.populated.add(ChunkPos.asLong(event.getChunkX(), event.getChunkZ()));
+    }
+
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event)
+    {
+        if (event.phase != TickEvent.Phase.START)
+            return;
+        synchronized (INDICES)
+        {
+            for (MetallicBlockIndex index : INDICES.values())
+                if (index.world.isRemote)
+                    index.publishCompleted();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkEvent.Load event)
+    {
+        MetallicBlockIndex index = INDICES.get(event.getWorld());
+        if (index != null)
+            index.columns.remove(ChunkPos.asLong(event.getChunk().x, event.getChunk().z));
+    }
+
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event)
+    {
+        MetallicBlockIndex index = INDICES.get(event.getWorld());
+        if (index != null)
+            index.columns.remove(ChunkPos.asLong(event.getChunk().x, event.getChunk().z));
+    }
+
+    private final World world;
+    private final TLongObjectMap<Column> columns = new TLongObjectHashMap<>();
+    private final Queue<Scan> completed = new ConcurrentLinkedQueue<>();
+    private int versions;
+    /**
+     * The chunks populated since the last tick.
+     */
+    private final TLongSet populated = new TLongHashSet();
+
+    private MetallicBlockIndex(World world)
+    {
+        this.world = world;
+    }
+
+    /**
+     * Collects the positions of all metallic blocks inside the given box. Positions in unloaded chunks are ignored.
+     *
+     * @param min    the minimum corner of the box, inclusive
+     * @param max    the maximum corner of the box, inclusive
+     * @param result the collection to add the found positions to
+     */
+    public void collect(BlockPos min, BlockPos max, Collection<BlockPos> result)
+    {
+        int minY = Math.max(0, min.getY());
+        int maxY = Math.min(255, max.getY());
+        if (minY > maxY)
+            return;
+        for (int chunkX = min.getX() >> 4; chunkX <= max.getX() >> 4; chunkX++)
+        {
+            for (int chunkZ = min.getZ() >> 4; chunkZ <= max.getZ() >> 4; chunkZ++)
+            {
+                Column column = column(chunkX, chunkZ);
+                if (column == null)
+                    continue;
+                for (int sectionY = minY >> 4; sectionY <= maxY >> 4; sectionY++)
+                {
+                    BitSet section = column.section(sectionY);
+                    if (section == null)
+                        continue;
+                    for (int i = section.nextSetBit(0); i >= 0; i = section.nextSetBit(i + 1))
+                    {
+                        int x = (chunkX << 4) | (i & 15);
+                        int y = (sectionY << 4) | (i >> 8);
+                        int z = (chunkZ << 4) | ((i >> 4) & 15);
+                        if (x >= min.getX() && x <= max.getX() && y >= minY && y <= maxY && z >= min.getZ() && z <= max.getZ())
+                            result.add(new BlockPos(x, y, z));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Provides a version of the metallic blocks in a chunk which changes whenever any of them might have changed,
+     * including the chunk being unloaded or reloaded.
+     * Users can keep results of {@link #collect(BlockPos, BlockPos, Collection)} as long as the versions of the chunks they cover are the same.
+     *
+     * @param chunkX the x coordinate of the chunk
+     * @param chunkZ the z coordinate of the chunk
+     * @return the current version of the chunk, 0 if it is not loaded
+     */
+    public int version(int chunkX, int chunkZ)
+    {
+        Column column = column(chunkX, chunkZ);
+        return column != null ? column.version : 0;
+    }
+
+    @Nullable
+    private Column column(int chunkX, int chunkZ)
+    {
+        long key = ChunkPos.asLong(chunkX, chunkZ);
+        Column column = columns.get(key);
+        if (column == null)
+        {
+            Chunk chunk = world.getChunkProvider().getLoadedChunk(chunkX, chunkZ);
+            if (chunk == null)
+                return null;
+            column = new Column(chunk);
+            columns.put(key, column);
+        }
+        return column;
+    }
+
+    /**
+     * Applies the results of all scans that finished since the last call, on the calling thread.
+     * Results are only applied here, at the start of a tick, so versions and collected blocks stay consistent throughout the tick.
+     */
+    private void publishCompleted()
+    {
+        Scan scan;
+        while ((scan = completed.poll()) != null)
+            publish(scan);
+    }
+
+    /**
+     * Applies the result of a scan, unless the chunk was unloaded or the section changed since its snapshot was taken.
+     */
+    private void publish(Scan scan)
+    {
+        Column column = scan.column;
+        if (columns.get(ChunkPos.asLong(column.chunk.x, column.chunk.z)) != column || column.generations[scan.sectionY] != scan.generation)
+            return;
+        BitSet result = scan.result;
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for (int n = 0; n < scan.contextual.size(); n++)
+        {
+            int i = scan.contextual.get(n);
+            pos.setPos((column.chunk.x << 4) | (i & 15), (scan.sectionY << 4) | (i >> 8), (column.chunk.z << 4) | ((i >> 4) & 15));
+            if (AllomancyAPIImpl.INSTANCE.isMetallic(world, pos))
+            {
+                if (result == null)
+                    result = new BitSet(4096);
+                result.set(i);
+            }
+        }
+        column.sections[scan.sectionY] = result;
+        column.indexed |= 1 << scan.sectionY;
+        column.requested &= ~(1 << scan.sectionY);
+        column.version = ++versions;
+    }
+
+    private void update(BlockPos pos)
+    {
+        if (pos.getY() < 0 || pos.getY() > 255)
+            return;
+        Column column = columns.get(ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4));
+        if (column != null)
+            column.update(pos);
+    }
+
+    /**
+     * Invalidates the columns written into by the population of chunks since the last call.
+     * Populating a chunk decorates the area offset by half a chunk in the positive directions, which spans 2x2 columns.
+     */
+    private void invalidatePopulated()
+    {
+        if (populated.isEmpty())
+            return;
+        populated.forEach(key ->
+                          {
+                              int x = (int) key;
+                              int z = (int) (key >>> 32);
+                              invalidate((x << 4) + 8, 0, (z << 4) + 8, (x << 4) + 23, 255, (z << 4) + 23);
+                              return true;
+                          });
+        populated.clear();
+    }
+
+    private void invalidate(int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+    {
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++)
+        {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++)
+            {
+                Column column = columns.get(ChunkPos.asLong(chunkX, chunkZ));
+                if (column == null)
+                    continue;
+                for (int sectionY = Math.max(0, minY >> 4); sectionY <= Math.min(15, maxY >> 4); sectionY++)
+                    column.invalidate(sectionY);
+                column.version = ++versions;
+            }
+        }
+    }
+
+    /**
+     * The metallic blocks of a single chunk, one bit set per section.
+     * Sections without any metallic blocks are represented by <code>null</code>.
+     */
+    private class Column
+    {
+        private final Chunk chunk;
+        private final BitSet[] sections = new BitSet[16];
+        private int indexed;
+        private int requested;
+        /**
+         * Counts the changes to each section, scans of snapshots taken before a change are discarded.
+         */
+        private final int[] generations = new int[16];
+        private int version = ++versions;
+
+        Column(Chunk chunk)
+        {
+            this.chunk = chunk;
+        }
+
+        /**
+         * Provides the metallic blocks of a section, requesting a scan of it if necessary.
+         * While the scan is running, the section appears to be empty.
+         */
+        @Nullable
+        BitSet section(int sectionY)
+        {
+            if ((indexed & (1 << sectionY)) == 0)
+            {
+                if ((requested & (1 << sectionY)) == 0)
+                    request(sectionY);
+                if ((indexed & (1 << sectionY)) == 0)
+                    return null;
+            }
+            return sections[sectionY];
+        }
+
+        void invalidate(int sectionY)
+        {
+            generations[sectionY]++;
+            indexed &= ~(1 << sectionY);
+            requested &= ~(1 << sectionY);
+        }
+
+        void update(BlockPos pos)
+        {
+            int sectionY = pos.getY() >> 4;
+            // The snapshot of a running scan is outdated, it needs to be taken again
+            if ((requested & (1 << sectionY)) != 0)
+                invalidate(sectionY);
+            if ((indexed & (1 << sectionY)) == 0)
+                return;
+            int i = ((pos.getY() & 15) << 8) | ((pos.getZ() & 15) << 4) | (pos.getX() & 15);
+            boolean metallic = AllomancyAPIImpl.INSTANCE.isMetallic(world, pos);
+            if (metallic == (sections[sectionY] != null && sections[sectionY].get(i)))
+                return;
+            version = ++versions;
+            if (metallic)
+            {
+                if (sections[sectionY] == null)
+                    sections[sectionY] = new BitSet(4096);
+                sections[sectionY].set(i);
+            }
+            else
+            {
+                sections[sectionY].clear(i);
+                if (sections[sectionY].isEmpty())
+                    sections[sectionY] = null;
+            }
+        }
+
+        /**
+         * Copies the packed block states of a section and its palette, so it can be decoded and indexed on another thread.
+         * Sections without any blocks are indexed right away, all others are published once the scan is done.
+         */
+        private void request(int sectionY)
+        {
+            ExtendedBlockStorage storage = chunk.getBlockStorageArray()[sectionY];
+            if (storage == Chunk.NULL_BLOCK_STORAGE || storage.isEmpty())
+            {
+                sections[sectionY] = null;
+                indexed |= 1 << sectionY;
+                return;
+            }
+            world.profiler.startSection("investiture:snapshot_metals");
+            Scan scan;
+            try
+            {
+                BlockStateContainer container = storage.getData();
+                BitArray data = (BitArray) GET_STORAGE.bindTo(container).invokeExact();
+                IBlockStatePalette palette = (IBlockStatePalette) GET_PALETTE.bindTo(container).invokeExact();
+                long[] packed = data.getBackingLongArray().clone();
+                // Each of the 4096 entries takes the same number of bits and the array is not padded
+                int bits = packed.length / 64;
+                // Local palettes may change along with the section and are copied, the global one is only read and can be used as it is
+                char[] states = null;
+                if (bits <= 8)
+                {
+                    states = new char[1 << bits];
+                    for (int id = 0; id < states.length; id++)
+                        states[id] = stateId(palette.getBlockState(id));
+                    palette = null;
+                }
+                scan = new Scan(this, sectionY, generations[sectionY], packed, bits, states, palette,
+                                AllomancyAPIImpl.INSTANCE.getBlockStateTable());
+            }
+            catch (Throwable t)
+            {
+                throw Throwables.propagate(t);
+            }
+            world.profiler.endSection();
+            ExecutorService pool = executor();
+            if (pool == null)
+            {
+                scan.run();
+                publish(scan);
+                return;
+            }
+            requested |= 1 << sectionY;
+            pool.execute(() ->
+                             {
+                                 scan.run();
+                                 completed.add(scan);
+                             });
+        }
+    }
+
+    /**
+     * Decodes and indexes a snapshot of a section's block states, without accessing the world.
+     * States whose metallic property depends on the world are only recorded, they are checked once the scan is published.
+     */
+    private static class Scan implements Runnable
+    {
+        final Column column;
+        final int sectionY;
+        final int generation;
+        private final long[] packed;
+        private final int bits;
+        /**
+         * The state IDs of the section's local palette, <code>null</code> if the section uses the global palette.
+         */
+        @Nullable
+        private final char[] states;
+        @Nullable
+        private final IBlockStatePalette palette;
+        private final AllomancyAPIImpl.BlockStateTable table;
+        BitSet result;
+        TIntList contextual = new TIntArrayList();
+
+        Scan(Column column, int sectionY, int generation, long[] packed, int bits, @Nullable char[] states, @Nullable IBlockStatePalette palette,
+             AllomancyAPIImpl.BlockStateTable table)
+        {
+            this.column = column;
+            this.sectionY = sectionY;
+            this.generation = generation;
+            this.packed = packed;
+            this.bits = bits;
+            this.states = states;
+            this.palette = palette;
+            this.table = table;
+        }
+
+        @Override
+        public void run()
+        {
+            long mask = (1L << bits) - 1;
+            for (int i = 0; i < 4096; i++)
+            {
+                // Same layout as BitArray, entries may span two longs
+                int bit = i * bits;
+                int start = bit >> 6;
+                int end = ((i + 1) * bits - 1) >> 6;
+                int offset = bit & 63;
+                int id = (int) ((start == end ? packed[start] >>> offset : packed[start] >>> offset | packed[end] << (64 - offset)) & mask);
+                char state = states != null ? states[id] : stateId(palette.getBlockState(id));
+                if (table.needsContext(state))
+                {
+                    contextual.add(i);
+                }
+                else if (table.isMetallic(state))
+                {
+                    if (result == null)
+                        result = new BitSet(4096);
+                    result.set(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param state a state from a palette, <code>null</code> for IDs it does not know
+     * @return the ID of the state, the ID of air for unknown states just like the palette's container treats them
+     */
+    private static char stateId(@Nullable IBlockState state)
+    {
+        return state != null ? (char) Block.getStateId(state) : 0;
+    }
+
+    /**
+     * Receives block changes from the world and forwards them to the index.
+     */
+    private class Listener extends WorldEventAdapter
+    {
+        @Override
+        public void notifyBlockUpdate(World world, BlockPos pos, IBlockState oldState, IBlockState newState, int flags)
+        {
+            if (oldState != newState)
+                update(pos);
+        }
+
+        @Override
+        public void markBlockRangeForRenderUpdate(int x1, int y1, int z1, int x2, int y2, int z2)
+        {
+            // Clients receive partial chunk updates without individual block notifications, those mark entire chunks for re-rendering
+            if (world.isRemote && x2 - x1 >= 15 && z2 - z1 >= 15)
+                invalidate(x1, y1, z1, x2, y2, z2);
+        }
+    }
+}
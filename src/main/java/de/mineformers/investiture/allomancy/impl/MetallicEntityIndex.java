@@ -0,0 +1,194 @@
+package de.mineformers.investiture.allomancy.impl;
+
+import de.mineformers.investiture.Investiture;
+import de.mineformers.investiture.util.WorldEventAdapter;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.TObjectLongMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.map.hash.TObjectLongHashMap;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.World;
+import net.minecraftforge.event.entity.EntityEvent;
+import net.minecraftforge.event.entity.living.LivingEquipmentChangeEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Keeps track of the metallic entities of a world, so allomantic queries do not have to check every entity in the area they cover.
+ * Entities are checked when they are added to the world and whenever their equipment changes, and are bucketed by the chunk column they are in,
+ * so a query only looks at the columns its box overlaps.
+ * <p>
+ * Clients are not told when the equipment of an entity changes, nor do they know what makes an entity metallic when it is spawned.
+ * The index is therefore only maintained on servers, on clients queries fall back to checking the entities in the box.
+ */
+@Mod.EventBusSubscriber(modid = Investiture.MOD_ID)
+public class MetallicEntityIndex
+{
+    private static final Map<World, MetallicEntityIndex> INDICES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public static MetallicEntityIndex from(World world)
+    {
+        MetallicEntityIndex index = INDICES.get(world);
+        if (index == null)
+        {
+            index = new MetallicEntityIndex(world);
+            if (!world.isRemote)
+            {
+                world.addEventListener(index.new Listener());
+                index.rebuild();
+            }
+            INDICES.put(world, index);
+        }
+        return index;
+    }
+
+    /**
+     * Checks all entities of all worlds again, needs to be called whenever the set of metallic entity predicates changes.
+     */
+    public static void rebuildAll()
+    {
+        synchronized (INDICES)
+        {
+            INDICES.values().forEach(MetallicEntityIndex::rebuild);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event)
+    {
+        INDICES.remove(event.getWorld());
+    }
+
+    @SubscribeEvent
+    public static void onEquipmentChange(LivingEquipmentChangeEvent event)
+    {
+        MetallicEntityIndex index = INDICES.get(event.getEntity().world);
+        if (index != null)
+            index.update(event.getEntity());
+    }
+
+    @SubscribeEvent
+    public static void onEnteringChunk(EntityEvent.EnteringChunk event)
+    {
+        MetallicEntityIndex index = INDICES.get(event.getEntity().world);
+        if (index != null && index.columnOf.containsKey(event.getEntity()))
+            index.add(event.getEntity(), ChunkPos.asLong(event.getNewChunkX(), event.getNewChunkZ()));
+    }
+
+    private final World world;
+    private final TLongObjectMap<Set<Entity>> columns = new TLongObjectHashMap<>();
+    private final TObjectLongMap<Entity> columnOf = new TObjectLongHashMap<>();
+
+    private MetallicEntityIndex(World world)
+    {
+        this.world = world;
+    }
+
+    /**
+     * Collects all metallic entities whose bounding box intersects the given box.
+     *
+     * @param box    the box to search in
+     * @param except an entity to leave out, usually the one searching
+     * @param result the collection to add the found entities to
+     */
+    public void collect(AxisAlignedBB box, @Nullable Entity except, Collection<Entity> result)
+    {
+        if (world.isRemote)
+        {
+            result.addAll(world.getEntitiesInAABBexcluding(except, box, e -> !e.isDead && AllomancyAPIImpl.INSTANCE.isMetallic(e)));
+            return;
+        }
+        // Entities are bucketed by their position, but their bounding box may reach into neighbouring columns
+        int minX = MathHelper.floor((box.minX - World.MAX_ENTITY_RADIUS) / 16);
+        int maxX = MathHelper.floor((box.maxX + World.MAX_ENTITY_RADIUS) / 16);
+        int minZ = MathHelper.floor((box.minZ - World.MAX_ENTITY_RADIUS) / 16);
+        int maxZ = MathHelper.floor((box.maxZ + World.MAX_ENTITY_RADIUS) / 16);
+        for (int chunkX = minX; chunkX <= maxX; chunkX++)
+            for (int chunkZ = minZ; chunkZ <= maxZ; chunkZ++)
+            {
+                Set<Entity> column = columns.get(ChunkPos.asLong(chunkX, chunkZ));
+                if (column == null)
+                    continue;
+                for (Entity entity : column)
+                {
+                    if (entity != except && !entity.isDead && box.intersects(entity.getEntityBoundingBox()))
+                        result.add(entity);
+                }
+            }
+    }
+
+    private void rebuild()
+    {
+        if (world.isRemote)
+            return;
+        columns.clear();
+        columnOf.clear();
+        for (Entity entity : world.loadedEntityList)
+            if (AllomancyAPIImpl.INSTANCE.isMetallic(entity))
+                add(entity, column(entity));
+    }
+
+    private static long column(Entity entity)
+    {
+        if (entity.addedToChunk)
+            return ChunkPos.asLong(entity.chunkCoordX, entity.chunkCoordZ);
+        return ChunkPos.asLong(MathHelper.floor(entity.posX) >> 4, MathHelper.floor(entity.posZ) >> 4);
+    }
+
+    private void add(Entity entity, long column)
+    {
+        remove(entity);
+        columnOf.put(entity, column);
+        Set<Entity> entities = columns.get(column);
+        if (entities == null)
+            columns.put(column, entities = new HashSet<>());
+        entities.add(entity);
+    }
+
+    private void remove(Entity entity)
+    {
+        if (!columnOf.containsKey(entity))
+            return;
+        long column = columnOf.remove(entity);
+        Set<Entity> entities = columns.get(column);
+        entities.remove(entity);
+        if (entities.isEmpty())
+            columns.remove(column);
+    }
+
+    private void update(Entity entity)
+    {
+        if (world.isRemote)
+            return;
+        if (!entity.isDead && AllomancyAPIImpl.INSTANCE.isMetallic(entity))
+            add(entity, column(entity));
+        else
+            remove(entity);
+    }
+
+    /**
+     * Receives entities being added to and removed from the world and forwards them to the index.
+     */
+    private class Listener extends WorldEventAdapter
+    {
+        @Override
+        public void onEntityAdded(Entity entity)
+        {
+            if (AllomancyAPIImpl.INSTANCE.isMetallic(entity))
+                add(entity, column(entity));
+        }
+
+        @Override
+        public void onEntityRemoved(Entity entity)
+        {
+            remove(entity);
+        }
+    }
+}
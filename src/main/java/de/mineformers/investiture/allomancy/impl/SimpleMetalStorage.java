@@ -1,9 +1,7 @@
 package de.mineformers.investiture.allomancy.impl;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Lists;
 import de.mineformers.investiture.Investiture;
+import de.mineformers.investiture.allomancy.AllomancyConfig;
 import de.mineformers.investiture.allomancy.api.Capabilities;
 import de.mineformers.investiture.allomancy.api.metal.Metal;
 import de.mineformers.investiture.allomancy.api.metal.MetalStorage;
@@ -11,7 +9,6 @@ import de.mineformers.investiture.allomancy.api.metal.Metals;
 import de.mineformers.investiture.allomancy.api.metal.stack.MetalStack;
 import de.mineformers.investiture.allomancy.api.metal.stack.MetalStackProvider;
 import de.mineformers.investiture.allomancy.network.AllomancerStorageUpdate;
-import de.mineformers.investiture.allomancy.network.AllomancerUpdate;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.nbt.NBTTagList;
@@ -19,13 +16,23 @@ import net.minecraftforge.common.util.Constants;
 import net.minecraftforge.common.util.INBTSerializable;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.*;
 
+/**
+ * Stores the metals of an Allomancer as primitive arrays per metal, indexed by the metal's {@link Metals#ordinal(Metal) ordinal}.
+ * The stacks of a metal keep the order they were added in, new metal is merged into the last stack if the purities match,
+ * burning consumes the first stacks.
+ */
 public class SimpleMetalStorage implements MetalStorage, INBTSerializable<NBTTagCompound>
 {
     private static final float CAPACITY = 1000;
-    public final ListMultimap<Metal, MetalStack> storage = ArrayListMultimap.create();
+    private Stacks[] metals = new Stacks[Metals.count()];
     public EntityAllomancer allomancer;
+    /**
+     * Counts the changes sent to clients, allowing them to detect missed updates.
+     */
+    public int version;
 
     public SimpleMetalStorage()
     {
@@ -36,6 +43,23 @@ public class SimpleMetalStorage implements MetalStorage, INBTSerializable<NBTTag
         this.allomancer = allomancer;
     }
 
+    @Nullable
+    private Stacks stacks(Metal metal, boolean create)
+    {
+        int ordinal = Metals.ordinal(metal);
+        if (ordinal < 0)
+            return null;
+        if (ordinal >= metals.length)
+        {
+            if (!create)
+                return null;
+            metals = Arrays.copyOf(metals, Math.max(ordinal + 1, Metals.count()));
+        }
+        if (metals[ordinal] == null && create)
+            metals[ordinal] = new Stacks(metal);
+        return metals[ordinal];
+    }
+
     @Override
     public List<MetalStack> consume(List<MetalStack> stacks, boolean simulate)
     {
@@ -45,7 +69,11 @@ public class SimpleMetalStorage implements MetalStorage, INBTSerializable<NBTTag
     @Override
     public List<MetalStack> get()
     {
-        return Lists.newArrayList(storage.values());
+        List<MetalStack> result = new ArrayList<>();
+        for (Stacks stacks : metals)
+            if (stacks != null)
+                stacks.addTo(result);
+        return result;
     }
 
     @Override
@@ -77,30 +105,27 @@ public class SimpleMetalStorage implements MetalStorage, INBTSerializable<NBTTag
     @Override
     public float consume(MetalStack stack, float amount, boolean simulate)
     {
-        List<MetalStack> current = storage.get(stack.getMetal());
-        float stored = current.stream().reduce(0f, (acc, s) -> acc + s.getQuantity(), (a, b) -> a + b);
+        // Metals without an ordinal could not be loaded from NBT either, so they are never accepted
+        if (Metals.ordinal(stack.getMetal()) < 0)
+            return 0;
+        Stacks current = stacks(stack.getMetal(), !simulate);
+        float stored = current != null ? current.total : 0;
         float acceptable = Math.min(amount, CAPACITY - stored);
-        Optional<MetalStack> existing = current.isEmpty() ? Optional.empty()
-                                                          : Optional.of(current.get(current.size() - 1))
-                                                                    .filter(s -> s.getPurity() == stack.getPurity());
         if (!simulate && acceptable > 0)
         {
-            if (existing.isPresent())
+            if (current.size > 0 && current.purity(current.size - 1) == stack.getPurity())
             {
-                MetalStack s = existing.get();
-                s.setQuantity(s.getQuantity() + acceptable);
-                Investiture.net().sendToTracking(allomancer.entity,
-                                                 new AllomancerStorageUpdate(allomancer.entity.getEntityId(),
-                                                                             AllomancerStorageUpdate.ACTION_UPDATE_LAST, s.copy()));
+                current.updateLast(current.quantity(current.size - 1) + acceptable);
+                sendUpdate(AllomancerStorageUpdate.ACTION_UPDATE_LAST, current.stack(current.size - 1), 0);
             }
             else
             {
-                MetalStack s = new MetalStack(stack.getMetal(), acceptable, stack.getPurity());
-                storage.put(stack.getMetal(), s);
-                Investiture.net().sendToTracking(allomancer.entity,
-                                                 new AllomancerStorageUpdate(allomancer.entity.getEntityId(),
-                                                                             AllomancerStorageUpdate.ACTION_APPEND, s.copy()));
+                current.append(acceptable, stack.getPurity());
+                sendUpdate(AllomancerStorageUpdate.ACTION_APPEND, current.stack(current.size - 1), 0);
             }
+            // Clients take over the exact quantity of the first stack if it was changed
+            if (current.size == 1)
+                current.synced(now());
         }
         return acceptable;
     }
@@ -108,70 +133,187 @@ public class SimpleMetalStorage implements MetalStorage, INBTSerializable<NBTTag
     @Override
     public Set<MetalStack> burn(Metal metal, float amount, boolean simulate)
     {
-        List<MetalStack> current = storage.get(metal);
+        Stacks current = stacks(metal, false);
         Set<MetalStack> result = new HashSet<>();
-        Iterator<MetalStack> iterator = current.iterator();
-        while (iterator.hasNext())
+        if (current == null)
+            return result;
+        float requested = amount;
+        for (int i = 0; i < current.size && amount > 0; )
         {
-            MetalStack stack = iterator.next();
-            if (stack.getQuantity() <= amount)
+            float quantity = current.quantity(i);
+            float purity = current.purity(i);
+            if (quantity <= amount)
             {
-                result.add(new MetalStack(stack.getMetal(), stack.getQuantity(), stack.getPurity()));
-                amount -= stack.getQuantity();
+                result.add(new MetalStack(metal, quantity, purity));
+                amount -= quantity;
                 if (!simulate)
                 {
-                    iterator.remove();
-                    Investiture.net().sendToTracking(allomancer.entity,
-                                                     new AllomancerStorageUpdate(allomancer.entity.getEntityId(),
-                                                                                 AllomancerStorageUpdate.ACTION_REMOVE_LAST, stack.copy()));
+                    current.removeFirst();
+                    current.desynced = true;
+                    sendUpdate(AllomancerStorageUpdate.ACTION_REMOVE_FIRST, new MetalStack(metal, quantity, purity), 0);
+                }
+                else
+                {
+                    i++;
                 }
             }
             else
             {
-                float remaining = stack.getQuantity() - amount;
-                result.add(new MetalStack(stack.getMetal(), amount, stack.getPurity()));
+                result.add(new MetalStack(metal, amount, purity));
                 if (!simulate)
-                {
-                    stack.setQuantity(remaining);
-                    Investiture.net().sendToTracking(allomancer.entity,
-                                                     new AllomancerStorageUpdate(allomancer.entity.getEntityId(),
-                                                                                 AllomancerStorageUpdate.ACTION_UPDATE_LAST, stack.copy()));
-                }
+                    current.updateFirst(quantity - amount);
                 amount = 0;
             }
-            if (amount <= 0)
+        }
+        if (!simulate)
+        {
+            // Partially burned stacks are not sent right away, update() synchronises them periodically along with the burn rate
+            long now = now();
+            current.burned = (current.burnedAt == now ? current.burned : 0) + requested - amount;
+            current.burnedAt = now;
+        }
+        return result;
+    }
+
+    /**
+     * Synchronises the quantities of the metals being burned with tracking clients.
+     * Updates are sent in the configured interval, or earlier if the burn rate changes or the quantity clients predict diverges too much.
+     * Must be called on the server after all metals were burned for the current tick.
+     */
+    public void update()
+    {
+        long now = now();
+        for (Stacks stacks : metals)
+        {
+            if (stacks == null || stacks.size == 0)
+                continue;
+            float rate = stacks.burnedAt == now ? stacks.burned : 0;
+            float predicted = Math.max(0, stacks.syncedFirst - stacks.rate * (now - stacks.syncedAt));
+            float divergence = Math.abs(predicted - stacks.quantity(0));
+            boolean due = now - stacks.syncedAt >= AllomancyConfig.sync.storageInterval && (rate != 0 || divergence > 0);
+            if (stacks.desynced || rate != stacks.rate || due || divergence > AllomancyConfig.sync.storageThreshold)
             {
-                break;
+                stacks.rate = rate;
+                stacks.synced(now);
+                sendUpdate(AllomancerStorageUpdate.ACTION_UPDATE_FIRST, stacks.stack(0), rate);
             }
         }
-        return result;
+    }
+
+    @Override
+    public float getStoredQuantity(Metal metal)
+    {
+        Stacks stacks = stacks(metal, false);
+        if (stacks == null)
+            return 0;
+        if (stacks.size == 0 || stacks.rate == 0 || allomancer == null || !allomancer.entity.world.isRemote)
+            return stacks.total;
+        // Clients only receive the quantity of a burning metal periodically and extrapolate it in between
+        float burned = Math.min(stacks.quantity(0), stacks.rate * (now() - stacks.syncedAt));
+        return stacks.total - Math.max(0, burned);
+    }
+
+    private long now()
+    {
+        return allomancer != null ? allomancer.entity.world.getTotalWorldTime() : 0;
+    }
+
+    private void sendUpdate(int action, MetalStack stack, float rate)
+    {
+        version++;
+        Investiture.net().sendToTracking(allomancer.entity,
+                                         new AllomancerStorageUpdate(allomancer.entity.getEntityId(), action, stack, version, rate));
+    }
+
+    /**
+     * Makes this storage belong to an Allomancer, predictions of burning metals start over from the current state.
+     *
+     * @param allomancer the Allomancer owning this storage
+     */
+    public void attach(EntityAllomancer allomancer)
+    {
+        this.allomancer = allomancer;
+        for (Stacks stacks : metals)
+            if (stacks != null)
+                stacks.synced(now());
+    }
+
+    /**
+     * Applies an update received from the server without sending any updates itself.
+     *
+     * @param action the action of the update, see {@link AllomancerStorageUpdate}
+     * @param stack  the stack the update refers to
+     * @param rate   the quantity of the metal burned per tick, only used for {@link AllomancerStorageUpdate#ACTION_UPDATE_FIRST}
+     */
+    public void apply(int action, MetalStack stack, float rate)
+    {
+        Stacks current = stacks(stack.getMetal(), true);
+        if (current == null)
+            return;
+        if (action == AllomancerStorageUpdate.ACTION_UPDATE_FIRST)
+            current.rate = rate;
+        switch (action)
+        {
+            case AllomancerStorageUpdate.ACTION_APPEND:
+                current.append(stack.getQuantity(), stack.getPurity());
+                break;
+            case AllomancerStorageUpdate.ACTION_UPDATE_LAST:
+                if (current.size > 0)
+                    current.set(current.size - 1, stack.getQuantity(), stack.getPurity());
+                break;
+            case AllomancerStorageUpdate.ACTION_REMOVE_LAST:
+                if (current.size > 0)
+                    current.removeLast();
+                break;
+            case AllomancerStorageUpdate.ACTION_UPDATE_FIRST:
+                if (current.size > 0)
+                    current.set(0, stack.getQuantity(), stack.getPurity());
+                break;
+            case AllomancerStorageUpdate.ACTION_REMOVE_FIRST:
+                if (current.size > 0)
+                    current.removeFirst();
+                break;
+        }
+        // The first stack's quantity is exact again, the prediction starts over
+        if (current.size <= 1 || action == AllomancerStorageUpdate.ACTION_UPDATE_FIRST || action == AllomancerStorageUpdate.ACTION_REMOVE_FIRST)
+            current.synced(now());
     }
 
     @Override
     public List<MetalStack> getStored(Metal metal)
     {
-        return storage.get(metal);
+        List<MetalStack> result = new ArrayList<>();
+        Stacks stacks = stacks(metal, false);
+        if (stacks != null)
+            stacks.addTo(result);
+        return result;
     }
 
     @Nonnull
     @Override
     public Set<Metal> getStoredMetals()
     {
-        return storage.keySet();
+        Set<Metal> result = new HashSet<>();
+        for (Stacks stacks : metals)
+            if (stacks != null && stacks.size > 0)
+                result.add(stacks.metal);
+        return result;
     }
 
     @Override
     public NBTTagCompound serializeNBT()
     {
         NBTTagCompound tag = new NBTTagCompound();
-        for (Map.Entry<Metal, Collection<MetalStack>> stacks : storage.asMap().entrySet())
+        for (Stacks stacks : metals)
         {
+            if (stacks == null || stacks.size == 0)
+                continue;
             NBTTagList list = new NBTTagList();
-            for (MetalStack stack : stacks.getValue())
+            for (int i = 0; i < stacks.size; i++)
             {
-                list.appendTag(stack.serializeNBT());
+                list.appendTag(stacks.stack(i).serializeNBT());
             }
-            tag.setTag(stacks.getKey().id(), list);
+            tag.setTag(stacks.metal.id(), list);
         }
         return tag;
     }
@@ -179,17 +321,139 @@ public class SimpleMetalStorage implements MetalStorage, INBTSerializable<NBTTag
     @Override
     public void deserializeNBT(NBTTagCompound nbt)
     {
-        storage.clear();
+        Arrays.fill(metals, null);
         for (String id : nbt.getKeySet())
         {
-            Metal metal = Metals.get(id);
-            List<MetalStack> stacks = new ArrayList<>();
+            Stacks stacks = stacks(Metals.get(id), true);
             NBTTagList nbtList = nbt.getTagList(id, Constants.NBT.TAG_COMPOUND);
-            for (int i = 0; i < nbtList.tagCount(); i++)
+            for (int i = 0; stacks != null && i < nbtList.tagCount(); i++)
             {
-                stacks.add(new MetalStack(nbtList.getCompoundTagAt(i)));
+                NBTTagCompound stack = nbtList.getCompoundTagAt(i);
+                stacks.append(stack.getFloat("Quantity"), stack.getFloat("Purity"));
             }
-            storage.putAll(metal, stacks);
+        }
+    }
+
+    /**
+     * The stacks of a single metal, kept in a ring buffer so both ends can be modified in constant time.
+     */
+    private static class Stacks
+    {
+        final Metal metal;
+        float[] quantities = new float[4];
+        float[] purities = new float[4];
+        int head;
+        int size;
+        float total;
+        /**
+         * The quantity burned per tick as last sent to or received by clients.
+         */
+        float rate;
+        /**
+         * The quantity of the first stack clients know about and the tick they learned about it.
+         */
+        float syncedFirst;
+        long syncedAt;
+        /**
+         * Set if clients cannot predict the first stack anymore, e.g. because the previous first stack was removed.
+         */
+        boolean desynced;
+        float burned;
+        long burnedAt;
+
+        Stacks(Metal metal)
+        {
+            this.metal = metal;
+        }
+
+        private int index(int i)
+        {
+            return (head + i) & (quantities.length - 1);
+        }
+
+        float quantity(int i)
+        {
+            return quantities[index(i)];
+        }
+
+        float purity(int i)
+        {
+            return purities[index(i)];
+        }
+
+        MetalStack stack(int i)
+        {
+            return new MetalStack(metal, quantity(i), purity(i));
+        }
+
+        void append(float quantity, float purity)
+        {
+            if (size == quantities.length)
+            {
+                float[] newQuantities = new float[quantities.length * 2];
+                float[] newPurities = new float[purities.length * 2];
+                for (int i = 0; i < size; i++)
+                {
+                    newQuantities[i] = quantity(i);
+                    newPurities[i] = purity(i);
+                }
+                quantities = newQuantities;
+                purities = newPurities;
+                head = 0;
+            }
+            quantities[index(size)] = quantity;
+            purities[index(size)] = purity;
+            size++;
+            total += quantity;
+            if (size == 1)
+                syncedFirst = quantity;
+        }
+
+        void synced(long now)
+        {
+            syncedFirst = size > 0 ? quantity(0) : 0;
+            syncedAt = now;
+            desynced = false;
+        }
+
+        void set(int i, float quantity, float purity)
+        {
+            total += quantity - quantities[index(i)];
+            quantities[index(i)] = quantity;
+            purities[index(i)] = purity;
+        }
+
+        void updateFirst(float quantity)
+        {
+            set(0, quantity, purity(0));
+        }
+
+        void updateLast(float quantity)
+        {
+            set(size - 1, quantity, purity(size - 1));
+        }
+
+        void removeFirst()
+        {
+            total -= quantities[head];
+            head = index(1);
+            size--;
+            if (size == 0)
+                total = 0;
+        }
+
+        void removeLast()
+        {
+            total -= quantity(size - 1);
+            size--;
+            if (size == 0)
+                total = 0;
+        }
+
+        void addTo(Collection<MetalStack> result)
+        {
+            for (int i = 0; i < size; i++)
+                result.add(stack(i));
         }
     }
 }
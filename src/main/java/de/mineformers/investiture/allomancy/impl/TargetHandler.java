@@ -2,19 +2,25 @@ package de.mineformers.investiture.allomancy.impl;
 
 import de.mineformers.investiture.Investiture;
 import de.mineformers.investiture.allomancy.api.Allomancer;
+import de.mineformers.investiture.allomancy.api.misting.Misting;
 import de.mineformers.investiture.allomancy.api.misting.Targeting;
+import de.mineformers.investiture.allomancy.api.misting.physical.MetalManipulator;
 import de.mineformers.investiture.allomancy.api.power.Effect;
 import de.mineformers.investiture.allomancy.network.TargetEffect;
 import de.mineformers.investiture.util.RayTracing;
 import net.minecraft.client.Minecraft;
+import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.EntitySelectors;
 import net.minecraft.util.EnumHand;
+import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.RayTraceResult;
 import net.minecraftforge.client.event.MouseEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent;
 import org.lwjgl.input.Mouse;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -46,6 +52,14 @@ public class TargetHandler
         }
     }
 
+    private static List<Entity> metallicEntities(EntityPlayer player, AxisAlignedBB box)
+    {
+        List<Entity> result = new ArrayList<>();
+        MetallicEntityIndex.from(player.world).collect(box, player, result);
+        result.removeIf(e -> !EntitySelectors.NOT_SPECTATING.apply(e));
+        return result;
+    }
+
     private void updateTargets(boolean leftClick, EntityPlayer player)
     {
         getAllomancer(player)
@@ -60,8 +74,13 @@ public class TargetHandler
                            RayTraceResult blockHit = RayTracing.rayTraceBlocks(Minecraft.getMinecraft().player, 20,
                                                                                s -> mistings.stream().anyMatch(m -> m.isValid(s.getPos())), false,
                                                                                false, false);
-                           RayTraceResult entityHit = RayTracing.rayTraceEntities(Minecraft.getMinecraft().player, 20,
-                                                                                  e -> mistings.stream().anyMatch(m -> m.isValid(e)));
+                           // Metal manipulators can only target metallic entities, there is no need to look at any others
+                           RayTraceResult entityHit;
+                           if (!mistings.isEmpty() && mistings.stream().allMatch(m -> m instanceof MetalManipulator))
+                               entityHit = RayTracing.rayTraceEntities(player, 20, box -> metallicEntities(player, box),
+                                                                       e -> mistings.stream().anyMatch(m -> m.isValid(e)));
+                           else
+                               entityHit = RayTracing.rayTraceEntities(player, 20, e -> mistings.stream().anyMatch(m -> m.isValid(e)));
                            if (blockHit != null || entityHit != null)
                            {
                                RayTraceResult hit = blockHit;
@@ -158,11 +177,12 @@ public class TargetHandler
 
     private void apply(Allomancer allomancer, Targeting misting, RayTraceResult target)
     {
+        Class<? extends Misting> type = allomancer.powers()
+                                                  .stream()
+                                                  .filter(t -> t.isAssignableFrom(misting.getClass()))
+                                                  .findFirst().get();
         Investiture.net().sendToServer(new TargetEffect(Minecraft.getMinecraft().player.getEntityId(),
-                                                        allomancer.powers()
-                                                                  .stream()
-                                                                  .filter(t -> t.isAssignableFrom(misting.getClass()))
-                                                                  .findFirst().get().getName(),
+                                                        AllomancyAPIImpl.INSTANCE.getRemoteMistingId(type),
                                                         target));
         misting.apply(target);
     }
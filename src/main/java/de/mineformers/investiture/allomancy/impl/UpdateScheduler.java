@@ -0,0 +1,95 @@
+package de.mineformers.investiture.allomancy.impl;
+
+import de.mineformers.investiture.allomancy.AllomancyConfig;
+import net.minecraft.entity.Entity;
+
+/**
+ * Spreads work that does not have to happen every tick across several ticks.
+ * Every entity is assigned to one of the configured number of shards based on its ID, work for it only runs in ticks of its shard.
+ * Effects that have to be applied every tick, e.g. changing velocities, are not scheduled through here.
+ * <p>
+ * The scheduler keeps track of the work it ran and deferred on the server, which is shown by the <code>stats</code> command.
+ */
+public final class UpdateScheduler
+{
+    public enum Work
+    {
+        SYNC_MISTINGS, SYNC_STORAGE, SCAN_METALS
+    }
+
+    private static final long[] executed = new long[Work.values().length];
+    private static final long[] deferred = new long[Work.values().length];
+    private static final long[] nanos = new long[Work.values().length];
+    private static long since = System.currentTimeMillis();
+
+    private UpdateScheduler()
+    {
+    }
+
+    /**
+     * @param entity the entity the work is done for
+     * @param work   the kind of work
+     * @return true if the work is due in the current tick, false if it should be deferred
+     */
+    public static boolean isDue(Entity entity, Work work)
+    {
+        int shards = AllomancyConfig.scheduling.shards;
+        // Offset by the kind of work so different work for the same entity does not pile up in one tick
+        boolean due = shards <= 1 || Math.floorMod(entity.world.getTotalWorldTime() + entity.getEntityId() + work.ordinal(), shards) == 0;
+        if (!entity.world.isRemote)
+        {
+            if (due)
+                executed[work.ordinal()]++;
+            else
+                deferred[work.ordinal()]++;
+        }
+        return due;
+    }
+
+    /**
+     * Records the time spent on work that was due.
+     *
+     * @param entity the entity the work was done for
+     * @param work   the kind of work
+     * @param start  the value of {@link System#nanoTime()} when the work started
+     */
+    public static void record(Entity entity, Work work, long start)
+    {
+        if (!entity.world.isRemote)
+            nanos[work.ordinal()] += System.nanoTime() - start;
+    }
+
+    public static long executed(Work work)
+    {
+        return executed[work.ordinal()];
+    }
+
+    public static long deferred(Work work)
+    {
+        return deferred[work.ordinal()];
+    }
+
+    public static double millis(Work work)
+    {
+        return nanos[work.ordinal()] / 1e6;
+    }
+
+    /**
+     * @return the number of seconds since the statistics were last reset
+     */
+    public static long seconds()
+    {
+        return (System.currentTimeMillis() - since) / 1000;
+    }
+
+    public static void reset()
+    {
+        for (Work work : Work.values())
+        {
+            executed[work.ordinal()] = 0;
+            deferred[work.ordinal()] = 0;
+            nanos[work.ordinal()] = 0;
+        }
+        since = System.currentTimeMillis();
+    }
+}
@@ -1,12 +1,56 @@
 package de.mineformers.investiture.allomancy.impl.misting;
 
 import de.mineformers.investiture.allomancy.api.misting.Misting;
+import de.mineformers.investiture.allomancy.api.misting.MistingDescriptor;
+import de.mineformers.investiture.allomancy.api.power.Effect;
+import de.mineformers.investiture.allomancy.api.power.Scope;
+import de.mineformers.investiture.allomancy.impl.AllomancyAPIImpl;
+import de.mineformers.investiture.serialisation.ClassCodec;
+import de.mineformers.investiture.serialisation.Serialisation;
+
+import javax.annotation.Nullable;
+import java.util.BitSet;
 
 /**
  * ${JDOC}
  */
 public abstract class AbstractMisting implements Misting
 {
+    private final BitSet dirtyFields = new BitSet();
+    private MistingDescriptor descriptor;
+
+    /**
+     * @return the description of this Misting's type, null if the type was never registered
+     */
+    @Nullable
+    protected MistingDescriptor descriptor()
+    {
+        if (descriptor == null)
+            descriptor = AllomancyAPIImpl.INSTANCE.getDescriptor(getClass());
+        return descriptor;
+    }
+
+    @Override
+    public String category()
+    {
+        MistingDescriptor descriptor = descriptor();
+        return descriptor != null ? descriptor.category() : Misting.super.category();
+    }
+
+    @Override
+    public Scope scope()
+    {
+        MistingDescriptor descriptor = descriptor();
+        return descriptor != null ? descriptor.scope() : Misting.super.scope();
+    }
+
+    @Override
+    public Effect effect()
+    {
+        MistingDescriptor descriptor = descriptor();
+        return descriptor != null ? descriptor.effect() : Misting.super.effect();
+    }
+
     @Override
     public void startBurning()
     {
@@ -16,4 +60,23 @@ public abstract class AbstractMisting implements Misting
     public void stopBurning()
     {
     }
+
+    @Override
+    public void markDirty(String field)
+    {
+        MistingDescriptor descriptor = descriptor();
+        ClassCodec codec = descriptor != null ? descriptor.codec() : Serialisation.INSTANCE.codec(getClass());
+        int ordinal = codec.netFieldOrdinal(field);
+        if (ordinal < 0)
+            throw new IllegalArgumentException("There is no synchronised field " + field + " in " + getClass().getName());
+        dirtyFields.set(ordinal);
+    }
+
+    /**
+     * @return the ordinals of all fields marked as changed since the last synchronisation, to be cleared by the caller once they were sent
+     */
+    public BitSet dirtyFields()
+    {
+        return dirtyFields;
+    }
 }
@@ -1,15 +1,19 @@
 package de.mineformers.investiture.allomancy.impl.misting.physical;
 
 import de.mineformers.investiture.allomancy.Allomancy;
+import de.mineformers.investiture.allomancy.api.Allomancer;
 import de.mineformers.investiture.allomancy.api.misting.Inject;
 import de.mineformers.investiture.allomancy.api.misting.physical.Coinshot;
 import de.mineformers.investiture.allomancy.api.misting.physical.Lurcher;
 import de.mineformers.investiture.allomancy.api.misting.physical.MetalManipulator;
-import de.mineformers.investiture.allomancy.impl.AllomancyAPIImpl;
+import de.mineformers.investiture.allomancy.impl.EntityAllomancer;
+import de.mineformers.investiture.allomancy.impl.MetalSense;
 import de.mineformers.investiture.allomancy.impl.misting.AbstractMisting;
 import de.mineformers.investiture.client.renderer.Shader;
 import de.mineformers.investiture.client.util.Rendering;
+import gnu.trove.map.TLongObjectMap;
 import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.Minecraft;
@@ -44,61 +48,36 @@ import static org.lwjgl.opengl.GL11.*;
  */
 public abstract class AbstractMetalManipulator extends AbstractMisting implements MetalManipulator, ITickable
 {
+    /**
+     * The most a cluster of distant blocks may amplify the effect, reached at 16 blocks.
+     */
+    private static final double MAX_CLUSTER_FACTOR = 4;
+    @Inject
+    protected Allomancer allomancer;
     @Inject
     protected Entity entity;
-    private Set<BlockPos> affectedBlocks = new HashSet<>();
-    private Set<Entity> affectedEntities = new HashSet<>();
-    private int updateCounter = 20;
+
+    private MetalSense sense()
+    {
+        return ((EntityAllomancer) allomancer).metalSense();
+    }
 
     @Override
     public Collection<BlockPos> affectedBlocks()
     {
-        return Collections.unmodifiableSet(affectedBlocks);
+        return sense().blocks();
     }
 
     @Override
     public Collection<Entity> affectedEntities()
     {
-        return Collections.unmodifiableSet(affectedEntities);
+        return sense().entities();
     }
 
     @Override
     public void update()
     {
-        updateCounter++;
-        if (updateCounter > 2)
-            updateCounter = 0;
-        else
-            return;
-        entity.world.profiler.startSection("investiture:find_metals_" + entity.world.isRemote);
-        entity.world.profiler.startSection("blocks");
-        affectedBlocks.clear();
-        BlockPos entityPos = entity.getPosition();
-        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
-        for (int x = -12; x <= 12; x++)
-        {
-            for (int y = -12; y <= 12; y++)
-            {
-                for (int z = -12; z <= 12; z++)
-                {
-                    pos.setPos(entityPos.getX() + x, entityPos.getY() + y, entityPos.getZ() + z);
-                    if (AllomancyAPIImpl.INSTANCE.isMetallic(entity.world, pos))
-                    {
-                        affectedBlocks.add(new BlockPos(pos));
-                    }
-                }
-            }
-        }
-        entity.world.profiler.endSection();
-        entity.world.profiler.startSection("entities");
-        affectedEntities.clear();
-        affectedEntities.addAll(
-            entity.world.getEntitiesInAABBexcluding(entity,
-                                                    new AxisAlignedBB(entity.posX - 12, entity.posY - 12, entity.posZ - 12,
-                                                                      entity.posX + 12, entity.posY + 12, entity.posZ + 12),
-                                                    AllomancyAPIImpl.INSTANCE::isMetallic));
-        entity.world.profiler.endSection();
-        entity.world.profiler.endSection();
+        sense().update();
     }
 
     @Override
@@ -110,7 +89,7 @@ public abstract class AbstractMetalManipulator extends AbstractMisting implement
     @Override
     public boolean isValid(BlockPos pos)
     {
-        return affectedBlocks().contains(pos);
+        return affectedBlocks().contains(pos) || sense().cluster(pos) != null;
     }
 
     @Override
@@ -124,14 +103,22 @@ public abstract class AbstractMetalManipulator extends AbstractMisting implement
 
     private void applyBlockEffect(RayTraceResult pos)
     {
-        if (!affectedBlocks.contains(pos.getBlockPos()))
+        if (affectedBlocks().contains(pos.getBlockPos()))
+        {
+            applyEffect(entity, pos.hitVec, 1);
             return;
-        applyEffect(entity, pos.hitVec, 1);
+        }
+        // Distant blocks are only sensed as a whole, act on them as if all were in the same place.
+        // More metal makes for a stronger anchor, the effect grows with the square root of the number of blocks so a single block
+        // acts like a near one, but a cluster is never more than MAX_CLUSTER_FACTOR times as strong
+        MetalSense.Cluster cluster = sense().cluster(pos.getBlockPos());
+        if (cluster != null)
+            applyEffect(entity, cluster.centre(), Math.min(Math.sqrt(cluster.weight()), MAX_CLUSTER_FACTOR));
     }
 
     private void applyEntityEffect(RayTraceResult pos)
     {
-        if (!affectedEntities.contains(pos.entityHit) || pos.entityHit == entity)
+        if (!affectedEntities().contains(pos.entityHit) || pos.entityHit == entity)
             return;
         applyEffect(pos.entityHit, pos.hitVec, -1);
     }
@@ -164,6 +151,7 @@ public abstract class AbstractMetalManipulator extends AbstractMisting implement
     {
         private Set<BlockPos> allPositions = new HashSet<>();
         private Set<Entity> allEntities = new HashSet<>();
+        private TLongObjectMap<MetalSense.Cluster> allClusters = new TLongObjectHashMap<>();
         private Set<PositionWrapper> positions = new HashSet<>();
         private TObjectIntMap<PositionWrapper> fadeInTimer = new TObjectIntHashMap<>();
         private TObjectIntMap<PositionWrapper> fadeOutTimer = new TObjectIntHashMap<>();
@@ -182,16 +170,15 @@ public abstract class AbstractMetalManipulator extends AbstractMisting implement
                                                 active = a.activePowers().contains(Coinshot.class) || a.activePowers().contains(Lurcher.class);
                                                 allEntities.clear();
                                                 allPositions.clear();
-                                                if (active)
+                                                allClusters.clear();
+                                                if (active && a instanceof EntityAllomancer)
                                                 {
-                                                    allEntities.addAll(a.as(Coinshot.class).map(MetalManipulator::affectedEntities)
-                                                                        .orElse(new HashSet<>()));
-                                                    allEntities.addAll(a.as(Lurcher.class).map(MetalManipulator::affectedEntities)
-                                                                        .orElse(new HashSet<>()));
-                                                    allPositions.addAll(a.as(Coinshot.class).map(MetalManipulator::affectedBlocks)
-                                                                         .orElse(new HashSet<>()));
-                                                    allPositions.addAll(a.as(Lurcher.class).map(MetalManipulator::affectedBlocks)
-                                                                         .orElse(new HashSet<>()));
+                                                    // Coinshots and Lurchers share the sense, so it holds everything either of them affects
+                                                    MetalSense sense = ((EntityAllomancer) a).metalSense();
+                                                    allEntities.addAll(sense.entities());
+                                                    allPositions.addAll(sense.blocks());
+                                                    for (MetalSense.Cluster cluster : sense.clusters())
+                                                        allClusters.put(cluster.section(), cluster);
                                                 }
 
                                                 Set<PositionWrapper> toRemove = new HashSet<>();
@@ -213,8 +200,7 @@ public abstract class AbstractMetalManipulator extends AbstractMisting implement
                                                         positions.add(p);
                                                         toRemove.add(p);
                                                     }
-                                                    else if ((p.base instanceof BlockPos && !allPositions.contains(p.base)) ||
-                                                        (p.base instanceof Entity && !allEntities.contains(p.base)))
+                                                    else if (!isSensed(p))
                                                     {
                                                         fadeOutTimer.put(p, 6 - fadeInTimer.get(p));
                                                         toRemove.add(p);
@@ -226,8 +212,7 @@ public abstract class AbstractMetalManipulator extends AbstractMisting implement
                                                 for (Iterator<PositionWrapper> it = positions.iterator(); it.hasNext(); )
                                                 {
                                                     PositionWrapper p = it.next();
-                                                    if ((p.base instanceof BlockPos && !allPositions.contains(p.base)) ||
-                                                        (p.base instanceof Entity && !allEntities.contains(p.base)))
+                                                    if (!isSensed(p))
                                                     {
                                                         fadeOutTimer.put(p, 0);
                                                         it.remove();
@@ -250,10 +235,25 @@ public abstract class AbstractMetalManipulator extends AbstractMisting implement
                                                         fadeInTimer.put(wrapper, 0);
                                                     }
                                                 }
+                                                for (MetalSense.Cluster cluster : allClusters.valueCollection())
+                                                {
+                                                    PositionWrapper wrapper = PositionWrapper.from(allClusters, cluster);
+                                                    if (!positions.contains(wrapper) && !fadeInTimer.containsKey(wrapper))
+                                                    {
+                                                        fadeInTimer.put(wrapper, 0);
+                                                    }
+                                                }
                                             });
             player.world.profiler.endSection();
         }
 
+        private boolean isSensed(PositionWrapper p)
+        {
+            return (p.base instanceof BlockPos && allPositions.contains(p.base)) ||
+                (p.base instanceof Entity && allEntities.contains(p.base)) ||
+                (p.base instanceof Long && allClusters.containsKey((Long) p.base));
+        }
+
         boolean hasRendered = false;
 
         @SubscribeEvent
@@ -406,6 +406,26 @@ public abstract class AbstractMetalManipulator extends AbstractMisting implement
                 };
             }
 
+            /**
+             * Clusters are rebuilt with every scan, so the line follows the current cluster of the same section as long as there is one.
+             */
+            static PositionWrapper from(TLongObjectMap<MetalSense.Cluster> clusters, MetalSense.Cluster cluster)
+            {
+                return new PositionWrapper(cluster.section())
+                {
+                    private Vec3d last = cluster.centre();
+
+                    @Override
+                    public Vec3d center()
+                    {
+                        MetalSense.Cluster current = clusters.get(cluster.section());
+                        if (current != null)
+                            last = current.centre();
+                        return last;
+                    }
+                };
+            }
+
             static PositionWrapper from(IBlockAccess access, BlockPos pos)
             {
                 return new PositionWrapper(pos)
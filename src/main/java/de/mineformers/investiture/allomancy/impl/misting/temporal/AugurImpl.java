@@ -105,6 +105,8 @@ public class AugurImpl extends AbstractMisting implements Augur, ITickable
                                                 {
                                                     ((AugurImpl) a).deathDimension = entity.dimension;
                                                     ((AugurImpl) a).position = entity.getPositionVector();
+                                                    a.markDirty("deathDimension");
+                                                    a.markDirty("position");
                                                 }
                                             });
         }
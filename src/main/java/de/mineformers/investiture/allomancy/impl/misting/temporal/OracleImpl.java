@@ -41,6 +41,8 @@ public class OracleImpl extends AbstractMisting implements Oracle, ITickable
         if (spawnPoint == null)
             spawnPoint = entity.world.getSpawnPoint();
         spawnDimension = entity.dimension;
+        markDirty("spawnPoint");
+        markDirty("spawnDimension");
         timer = 0;
         path.clear();
         path.addAll(PathFinding.bresenham(entity, spawnPoint));
@@ -0,0 +1,33 @@
+package de.mineformers.investiture.allomancy.network;
+
+import de.mineformers.investiture.network.Message;
+
+/**
+ * Informs clients about changes to an Allomancer's active powers since the last update.
+ * Clients request a full {@link AllomancerUpdate} if their copy of the storage turns out to be outdated.
+ */
+public class AllomancerDelta extends Message
+{
+    public int entityId;
+    /**
+     * Bit mask of the Misting IDs of powers that were activated, as assigned by the server.
+     */
+    public long activated;
+    /**
+     * Bit mask of the Misting IDs of powers that were deactivated, as assigned by the server.
+     */
+    public long deactivated;
+    public int storageVersion;
+
+    public AllomancerDelta()
+    {
+    }
+
+    public AllomancerDelta(int entityId, long activated, long deactivated, int storageVersion)
+    {
+        this.entityId = entityId;
+        this.activated = activated;
+        this.deactivated = deactivated;
+        this.storageVersion = storageVersion;
+    }
+}
@@ -13,19 +13,31 @@ public class AllomancerStorageUpdate extends Message
     public static final int ACTION_APPEND = 0;
     public static final int ACTION_UPDATE_LAST = 1;
     public static final int ACTION_REMOVE_LAST = 2;
+    public static final int ACTION_UPDATE_FIRST = 3;
+    public static final int ACTION_REMOVE_FIRST = 4;
 
     public int entityId;
     public int action;
     public MetalStack stack;
+    /**
+     * The version of the storage after applying this update.
+     */
+    public int version;
+    /**
+     * The quantity of the metal burned per tick, only sent along with {@link #ACTION_UPDATE_FIRST}.
+     */
+    public float rate;
 
     public AllomancerStorageUpdate()
     {
     }
 
-    public AllomancerStorageUpdate(int entityId, int action, MetalStack stack)
+    public AllomancerStorageUpdate(int entityId, int action, MetalStack stack, int version, float rate)
     {
         this.entityId = entityId;
         this.action = action;
         this.stack = stack;
+        this.version = version;
+        this.rate = rate;
     }
 }
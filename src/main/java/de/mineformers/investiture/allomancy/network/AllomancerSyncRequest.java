@@ -0,0 +1,20 @@
+package de.mineformers.investiture.allomancy.network;
+
+import de.mineformers.investiture.network.Message;
+
+/**
+ * Asks the server for the full state of an Allomancer after the client noticed it missed an update.
+ */
+public class AllomancerSyncRequest extends Message
+{
+    public int entityId;
+
+    public AllomancerSyncRequest()
+    {
+    }
+
+    public AllomancerSyncRequest(int entityId)
+    {
+        this.entityId = entityId;
+    }
+}
@@ -0,0 +1,63 @@
+package de.mineformers.investiture.allomancy.network;
+
+import de.mineformers.investiture.network.ManualTranslation;
+import de.mineformers.investiture.network.Message;
+import io.netty.buffer.ByteBuf;
+import net.minecraftforge.fml.common.network.ByteBufUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tells the client which IDs the server assigned to each Misting type and which ordinals it assigned to each metal,
+ * sent whenever a player joins a world.
+ */
+public class AllomancyRegistryUpdate extends Message
+{
+    @ManualTranslation
+    public List<String> mistings;
+    @ManualTranslation
+    public List<String> metals;
+
+    public AllomancyRegistryUpdate()
+    {
+    }
+
+    public AllomancyRegistryUpdate(List<String> mistings, List<String> metals)
+    {
+        this.mistings = mistings;
+        this.metals = metals;
+    }
+
+    @Override
+    public void fromBytes(ByteBuf buf)
+    {
+        super.fromBytes(buf);
+        mistings = readNames(buf);
+        metals = readNames(buf);
+    }
+
+    private static List<String> readNames(ByteBuf buf)
+    {
+        int count = ByteBufUtils.readVarInt(buf, 5);
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            result.add(ByteBufUtils.readUTF8String(buf));
+        return result;
+    }
+
+    @Override
+    public void toBytes(ByteBuf buf)
+    {
+        super.toBytes(buf);
+        writeNames(buf, mistings);
+        writeNames(buf, metals);
+    }
+
+    private static void writeNames(ByteBuf buf, List<String> names)
+    {
+        ByteBufUtils.writeVarInt(buf, names.size(), 5);
+        for (String name : names)
+            ByteBufUtils.writeUTF8String(buf, name);
+    }
+}
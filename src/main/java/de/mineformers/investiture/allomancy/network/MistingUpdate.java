@@ -1,6 +1,9 @@
 package de.mineformers.investiture.allomancy.network;
 
+import de.mineformers.investiture.network.ManualTranslation;
 import de.mineformers.investiture.network.Message;
+import io.netty.buffer.ByteBuf;
+import net.minecraftforge.fml.common.network.ByteBufUtils;
 
 /**
  * ${JDOC}
@@ -8,17 +11,32 @@ import de.mineformers.investiture.network.Message;
 public class MistingUpdate extends Message
 {
     public int entityId;
-    public String type;
+    @ManualTranslation
+    public int type;
     public byte[] data;
 
     public MistingUpdate()
     {
     }
 
-    public MistingUpdate(int entityId, String type, byte[] data)
+    public MistingUpdate(int entityId, int type, byte[] data)
     {
         this.entityId = entityId;
         this.type = type;
         this.data = data;
     }
+
+    @Override
+    public void fromBytes(ByteBuf buf)
+    {
+        super.fromBytes(buf);
+        type = ByteBufUtils.readVarInt(buf, 5);
+    }
+
+    @Override
+    public void toBytes(ByteBuf buf)
+    {
+        super.toBytes(buf);
+        ByteBufUtils.writeVarInt(buf, type, 5);
+    }
 }
@@ -1,7 +1,10 @@
 package de.mineformers.investiture.allomancy.network;
 
+import de.mineformers.investiture.network.ManualTranslation;
 import de.mineformers.investiture.network.Message;
+import io.netty.buffer.ByteBuf;
 import net.minecraft.util.math.RayTraceResult;
+import net.minecraftforge.fml.common.network.ByteBufUtils;
 
 /**
  * ${JDOC}
@@ -9,17 +12,32 @@ import net.minecraft.util.math.RayTraceResult;
 public class TargetEffect extends Message
 {
     public int entityId;
-    public String type;
+    @ManualTranslation
+    public int type;
     public RayTraceResult target;
 
     public TargetEffect()
     {
     }
 
-    public TargetEffect(int entityId, String type, RayTraceResult target)
+    public TargetEffect(int entityId, int type, RayTraceResult target)
     {
         this.entityId = entityId;
         this.type = type;
         this.target = target;
     }
+
+    @Override
+    public void fromBytes(ByteBuf buf)
+    {
+        super.fromBytes(buf);
+        type = ByteBufUtils.readVarInt(buf, 5);
+    }
+
+    @Override
+    public void toBytes(ByteBuf buf)
+    {
+        super.toBytes(buf);
+        ByteBufUtils.writeVarInt(buf, type, 5);
+    }
 }
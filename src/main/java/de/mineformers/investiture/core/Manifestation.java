@@ -1,6 +1,7 @@
 package de.mineformers.investiture.core;
 
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
+import net.minecraftforge.fml.common.event.FMLModIdMappingEvent;
 import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
@@ -43,4 +44,13 @@ public interface Manifestation
      * @param event the event that triggers this method
      */
     void postInit(FMLPostInitializationEvent event);
+
+    /**
+     * Fired whenever the IDs of registry entries have changed. Should be used for discarding anything computed from those IDs.
+     *
+     * @param event the event that triggers this method
+     */
+    default void remap(FMLModIdMappingEvent event)
+    {
+    }
 }
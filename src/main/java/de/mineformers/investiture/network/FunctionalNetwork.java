@@ -2,7 +2,10 @@ package de.mineformers.investiture.network;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import de.mineformers.investiture.network.message.MessageBundle;
 import de.mineformers.investiture.serialisation.Serialisation;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityTracker;
@@ -10,24 +13,33 @@ import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.network.INetHandler;
 import net.minecraft.network.Packet;
+import net.minecraft.network.PacketBuffer;
 import net.minecraft.network.play.server.SPacketUpdateTileEntity;
-import net.minecraft.server.management.PlayerChunkMap;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.management.PlayerChunkMapEntry;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.fml.common.FMLCommonHandler;
 import net.minecraftforge.fml.common.FMLLog;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+import net.minecraftforge.fml.common.network.ByteBufUtils;
 import net.minecraftforge.fml.common.network.FMLEmbeddedChannel;
 import net.minecraftforge.fml.common.network.FMLOutboundHandler;
 import net.minecraftforge.fml.common.network.NetworkRegistry;
+import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessageHandler;
 import net.minecraftforge.fml.common.network.simpleimpl.SimpleIndexedCodec;
 import net.minecraftforge.fml.relauncher.Side;
 import org.apache.logging.log4j.Level;
 
+import javax.annotation.Nullable;
 import java.lang.reflect.Method;
-import java.util.EnumMap;
+import java.util.*;
 
 /**
  * Provides packet handling with a functional API.
@@ -71,9 +83,29 @@ public class FunctionalNetwork
         }
     }
 
+    private final String channelName;
     private EnumMap<Side, FMLEmbeddedChannel> channels;
     private SimpleIndexedCodec packetCodec;
     private int lastDiscriminator = 0;
+    private final Class<?>[] messageTypes = new Class<?>[256];
+    /**
+     * The discriminator of each message type, -1 for unregistered types. Looked up for every message sent or received,
+     * hence cached per class instead of going through a map.
+     */
+    private final ClassValue<Integer> discriminators = new ClassValue<Integer>()
+    {
+        @Override
+        protected Integer computeValue(Class<?> type)
+        {
+            for (int i = 0; i < messageTypes.length; i++)
+                if (messageTypes[i] == type)
+                    return i;
+            return -1;
+        }
+    };
+    private final EnumMap<Side, Dispatcher> dispatchers = new EnumMap<>(Side.class);
+    private boolean batching;
+    private final Map<EntityPlayerMP, ByteBuf> batches = new LinkedHashMap<>();
 
     /**
      * Creates an instance of the class. Private because {@link FunctionalNetwork#create(String)} is the way to acquire an instance.
@@ -82,8 +114,34 @@ public class FunctionalNetwork
      */
     private FunctionalNetwork(String channelName)
     {
+        this.channelName = channelName;
         packetCodec = new SimpleIndexedCodec();
         channels = NetworkRegistry.INSTANCE.newChannel(channelName, packetCodec);
+        registerMessage(MessageBundle.class);
+        for (Side side : Side.values())
+        {
+            Dispatcher dispatcher = new Dispatcher(side);
+            FMLEmbeddedChannel channel = channels.get(side);
+            channel.pipeline().addAfter(channel.findChannelHandlerNameForType(SimpleIndexedCodec.class),
+                                        generateName(channel.pipeline(), dispatcher), dispatcher);
+            dispatchers.put(side, dispatcher);
+        }
+    }
+
+    /**
+     * Enables batching of messages sent to players from the server thread.
+     * Instead of being sent right away, messages sent through {@link #sendTo(EntityPlayerMP, Message)} or {@link #sendTo(Collection, Message)},
+     * and therefore also {@link #sendToTracking(Entity, Message)} and {@link #sendToWatching(World, BlockPos, Message)},
+     * are queued per player and sent as one bundle at the end of the server tick.
+     * Messages sent through {@link #sendToAll(IMessage)}, {@link #sendToAllAround(NetworkRegistry.TargetPoint, Message)},
+     * {@link #sendToDimension(int, Message)} or from other threads are not batched, so they may overtake batched ones.
+     */
+    public void enableBatching()
+    {
+        if (batching)
+            return;
+        batching = true;
+        MinecraftForge.EVENT_BUS.register(this);
     }
 
     /**
@@ -125,12 +183,17 @@ public class FunctionalNetwork
     public <IN extends Message> void registerMessage(Class<IN> type, int discriminator)
     {
         packetCodec.addDiscriminator(discriminator, type);
+        if (messageTypes[discriminator & 0xFF] != null)
+            discriminators.remove(messageTypes[discriminator & 0xFF]);
+        messageTypes[discriminator & 0xFF] = type;
+        discriminators.remove(type);
         Serialisation.INSTANCE.registerClass(type, false);
         if (lastDiscriminator < discriminator) lastDiscriminator = discriminator;
     }
 
     /**
-     * Adds a handler for a message.
+     * Adds a handler for a message, replacing any handler previously added for the same type and side.
+     * The message type must have been registered beforehand.
      *
      * @param type    the class of the message
      * @param side    the side the handler is supposed to run on
@@ -138,10 +201,9 @@ public class FunctionalNetwork
      */
     public <IN extends Message, OUT extends Message> void addHandler(Class<IN> type, Side side, Message.Handler<? super IN, ? extends OUT> handler)
     {
-        Wrapper<IN, OUT> wrapped = new Wrapper<>(handler, side, type);
-        FMLEmbeddedChannel channel = channels.get(side);
-        String tp = channel.findChannelHandlerNameForType(SimpleIndexedCodec.class);
-        channel.pipeline().addAfter(tp, generateName(channel.pipeline(), wrapped), wrapped);
+        int discriminator = discriminators.get(type);
+        Preconditions.checkArgument(discriminator >= 0, "Message type %s has not been registered", type.getName());
+        dispatchers.get(side).handlers[discriminator & 0xFF] = Preconditions.checkNotNull(handler, "Message handler must not be null");
     }
 
     /**
@@ -177,11 +239,69 @@ public class FunctionalNetwork
      */
     public void sendTo(EntityPlayerMP player, Message message)
     {
+        if (isBatching())
+        {
+            batch(player, encode(message));
+            return;
+        }
         channels.get(Side.SERVER).attr(FMLOutboundHandler.FML_MESSAGETARGET).set(FMLOutboundHandler.OutboundTarget.PLAYER);
         channels.get(Side.SERVER).attr(FMLOutboundHandler.FML_MESSAGETARGETARGS).set(player);
         channels.get(Side.SERVER).writeAndFlush(message).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
     }
 
+    /**
+     * Send this message to several players, encoding it only once.
+     * The {@link IMessageHandler} for this message type should be on the CLIENT side.
+     *
+     * @param players The players to send it to
+     * @param message The message to send
+     */
+    public void sendTo(Collection<EntityPlayerMP> players, Message message)
+    {
+        if (players.isEmpty())
+            return;
+        ByteBuf encoded = encode(message);
+        boolean batching = isBatching();
+        for (EntityPlayerMP player : players)
+        {
+            // Every recipient gets its own view on the shared buffer, the connections may be written from different threads
+            if (batching)
+                batch(player, encoded.duplicate());
+            else
+                player.connection.sendPacket(new FMLProxyPacket(new PacketBuffer(encoded.duplicate()), channelName));
+        }
+    }
+
+    /**
+     * @return true if messages sent right now should be added to the current batch instead of being sent immediately
+     */
+    private boolean isBatching()
+    {
+        MinecraftServer server = FMLCommonHandler.instance().getMinecraftServerInstance();
+        return batching && server != null && server.isCallingFromMinecraftThread();
+    }
+
+    /**
+     * Encodes a message the same way the codec does, i.e. prefixed with its discriminator.
+     *
+     * @param message the message to encode
+     * @return a buffer containing the encoded message
+     */
+    private ByteBuf encode(Message message)
+    {
+        ByteBuf encoded = Unpooled.buffer();
+        encoded.writeByte(discriminators.get(message.getClass()));
+        message.toBytes(encoded);
+        return encoded;
+    }
+
+    private void batch(EntityPlayerMP player, ByteBuf encoded)
+    {
+        ByteBuf batch = batches.computeIfAbsent(player, p -> Unpooled.buffer());
+        ByteBufUtils.writeVarInt(batch, encoded.readableBytes(), 5);
+        batch.writeBytes(encoded);
+    }
+
     /**
      * Send this message to everyone within a certain range of a point.
      * The {@link IMessageHandler} for this message type should be on the CLIENT side.
@@ -233,13 +353,9 @@ public class FunctionalNetwork
         SPacketUpdateTileEntity packet = tileEntity.getUpdatePacket();
         if (packet == null)
             return;
-        if (tileEntity.getWorld() instanceof WorldServer)
-        {
-            PlayerChunkMap manager = ((WorldServer) tileEntity.getWorld()).getPlayerChunkMap();
-            for (EntityPlayer player : tileEntity.getWorld().playerEntities)
-                if (manager.isPlayerWatchingChunk((EntityPlayerMP) player, tileEntity.getPos().getX() >> 4, tileEntity.getPos().getZ() >> 4))
-                    ((EntityPlayerMP) player).connection.sendPacket(packet);
-        }
+        PlayerChunkMapEntry entry = getWatchers(tileEntity.getWorld(), tileEntity.getPos());
+        if (entry != null)
+            entry.sendPacket(packet);
     }
 
     /**
@@ -251,13 +367,31 @@ public class FunctionalNetwork
      */
     public void sendToWatching(World world, BlockPos pos, Message message)
     {
-        if (world instanceof WorldServer)
-        {
-            PlayerChunkMap manager = ((WorldServer) world).getPlayerChunkMap();
-            for (EntityPlayer player : world.playerEntities)
-                if (manager.isPlayerWatchingChunk((EntityPlayerMP) player, pos.getX() >> 4, pos.getZ() >> 4))
-                    sendTo((EntityPlayerMP) player, message);
-        }
+        PlayerChunkMapEntry entry = getWatchers(world, pos);
+        if (entry == null)
+            return;
+        List<EntityPlayerMP> players = new ArrayList<>();
+        // The entry does not expose its players, so collect them through its predicate lookup
+        entry.hasPlayerMatching(player ->
+                                {
+                                    players.add(player);
+                                    return false;
+                                });
+        sendTo(players, message);
+    }
+
+    /**
+     * @param world the world the chunk is in
+     * @param pos   a position belonging to the chunk
+     * @return the entry holding all players watching the chunk, null if there is none or the chunk has not been sent to its players yet
+     */
+    @Nullable
+    private static PlayerChunkMapEntry getWatchers(World world, BlockPos pos)
+    {
+        if (!(world instanceof WorldServer))
+            return null;
+        PlayerChunkMapEntry entry = ((WorldServer) world).getPlayerChunkMap().getEntry(pos.getX() >> 4, pos.getZ() >> 4);
+        return entry != null && entry.isSentToPlayers() ? entry : null;
     }
 
     /**
@@ -271,33 +405,81 @@ public class FunctionalNetwork
         if (entity.world instanceof WorldServer)
         {
             EntityTracker tracker = ((WorldServer) entity.world).getEntityTracker();
+            List<EntityPlayerMP> players = new ArrayList<>();
             for (EntityPlayer p : tracker.getTrackingPlayers(entity))
-                sendTo((EntityPlayerMP) p, message);
+                players.add((EntityPlayerMP) p);
             if (entity instanceof EntityPlayerMP)
-                sendTo((EntityPlayerMP) entity, message);
+                players.add((EntityPlayerMP) entity);
+            sendTo(players, message);
         }
     }
 
+    /**
+     * Sends all messages batched during the current tick, one bundle per player.
+     *
+     * @param event the event triggering this method
+     */
+    @SubscribeEvent
+    public void onServerTick(TickEvent.ServerTickEvent event)
+    {
+        if (event.phase != TickEvent.Phase.END || batches.isEmpty())
+            return;
+        for (Map.Entry<EntityPlayerMP, ByteBuf> entry : batches.entrySet())
+        {
+            ByteBuf batch = entry.getValue();
+            byte[] payload = new byte[batch.readableBytes()];
+            batch.readBytes(payload);
+            channels.get(Side.SERVER).attr(FMLOutboundHandler.FML_MESSAGETARGET).set(FMLOutboundHandler.OutboundTarget.PLAYER);
+            channels.get(Side.SERVER).attr(FMLOutboundHandler.FML_MESSAGETARGETARGS).set(entry.getKey());
+            channels.get(Side.SERVER).writeAndFlush(new MessageBundle(payload)).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+        }
+        batches.clear();
+    }
+
     /**
      * Internal class acting as interface between {@link de.mineformers.investiture.network.Message.Handler Handlers} and Netty.
+     * There is one dispatcher per side, it looks up the handler for each message by its discriminator.
+     * {@link MessageBundle Bundles} are unpacked and each contained message is dispatched as if it was received on its own.
      */
-    private static class Wrapper<IN extends Message, OUT extends Message> extends SimpleChannelInboundHandler<IN>
+    private class Dispatcher extends SimpleChannelInboundHandler<Message>
     {
-        private final Message.Handler<? super IN, ? extends OUT> messageHandler;
         private final Side side;
+        private final Message.Handler<?, ?>[] handlers = new Message.Handler<?, ?>[256];
 
-        public Wrapper(Message.Handler<? super IN, ? extends OUT> handler, Side side, Class<IN> requestType)
+        Dispatcher(Side side)
         {
-            super(requestType);
-            messageHandler = Preconditions.checkNotNull(handler, "IMessageHandler must not be null");
+            super(Message.class);
             this.side = side;
         }
 
         @Override
-        protected void channelRead0(ChannelHandlerContext ctx, IN msg) throws Exception
+        protected void channelRead0(ChannelHandlerContext ctx, Message msg) throws Exception
+        {
+            if (!(msg instanceof MessageBundle))
+            {
+                dispatch(ctx, discriminators.get(msg.getClass()), msg);
+                return;
+            }
+            ByteBuf payload = Unpooled.wrappedBuffer(((MessageBundle) msg).payload);
+            while (payload.isReadable())
+            {
+                int length = ByteBufUtils.readVarInt(payload, 5);
+                ByteBuf encoded = payload.readSlice(length);
+                int discriminator = encoded.readUnsignedByte();
+                Message message = (Message) messageTypes[discriminator].newInstance();
+                message.fromBytes(encoded);
+                dispatch(ctx, discriminator, message);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void dispatch(ChannelHandlerContext ctx, int discriminator, Message msg)
         {
+            Message.Handler<Message, ?> handler = (Message.Handler<Message, ?>) handlers[discriminator & 0xFF];
+            if (handler == null)
+                return;
             INetHandler netHandler = ctx.channel().attr(NetworkRegistry.NET_HANDLER).get();
-            OUT result = messageHandler.handle(msg, new Message.Context(netHandler, side));
+            Message result = handler.handle(msg, new Message.Context(netHandler, side));
             if (result != null)
             {
                 ctx.channel().attr(FMLOutboundHandler.FML_MESSAGETARGET).set(FMLOutboundHandler.OutboundTarget.REPLY);
@@ -308,7 +490,7 @@ public class FunctionalNetwork
         @Override
         public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception
         {
-            FMLLog.log(Level.ERROR, cause, "SimpleChannelHandlerWrapper exception");
+            FMLLog.log(Level.ERROR, cause, "FunctionalNetwork dispatcher exception");
             super.exceptionCaught(ctx, cause);
         }
     }
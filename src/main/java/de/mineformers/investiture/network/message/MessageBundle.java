@@ -0,0 +1,21 @@
+package de.mineformers.investiture.network.message;
+
+import de.mineformers.investiture.network.Message;
+
+/**
+ * Carries several encoded messages at once, each prefixed with its length and discriminator.
+ * Sent by a {@link de.mineformers.investiture.network.FunctionalNetwork FunctionalNetwork} with batching enabled.
+ */
+public class MessageBundle extends Message
+{
+    public byte[] payload;
+
+    public MessageBundle()
+    {
+    }
+
+    public MessageBundle(byte[] payload)
+    {
+        this.payload = payload;
+    }
+}
@@ -0,0 +1,66 @@
+package de.mineformers.investiture.serialisation;
+
+import de.mineformers.investiture.serialisation.Serialisation.FieldData;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable plan for serialising instances of a single class, compiled once by {@link Serialisation#registerClass(Class, boolean)}.
+ * <p>
+ * Fields are ordered by name and declaring class, so sender and receiver always agree on the order of the net fields.
+ */
+public final class ClassCodec
+{
+    static final ClassCodec EMPTY = new ClassCodec(new FieldData[0]);
+    final FieldData[] fields;
+    final FieldData[] netFields;
+    final FieldData[] nbtFields;
+    private final List<FieldData> netFieldList;
+
+    ClassCodec(FieldData[] fields)
+    {
+        this.fields = fields;
+        this.netFields = Arrays.stream(fields).filter(f -> f.net).toArray(FieldData[]::new);
+        this.nbtFields = Arrays.stream(fields).filter(f -> f.nbt).toArray(FieldData[]::new);
+        this.netFieldList = Collections.unmodifiableList(Arrays.asList(netFields));
+    }
+
+    /**
+     * @return all fields synchronised over the network, in the order they are written
+     */
+    public List<FieldData> netFields()
+    {
+        return netFieldList;
+    }
+
+    /**
+     * @param ordinal the position of the field among the net fields
+     * @return the net field at the given position
+     */
+    public FieldData netField(int ordinal)
+    {
+        return netFields[ordinal];
+    }
+
+    /**
+     * @param name the name of the field
+     * @return the position of the field among the net fields, -1 if there is no such net field
+     */
+    public int netFieldOrdinal(String name)
+    {
+        for (int i = 0; i < netFields.length; i++)
+            if (netFields[i].name.equals(name))
+                return i;
+        return -1;
+    }
+
+    /**
+     * @return the number of fields synchronised over the network
+     */
+    public int netFieldCount()
+    {
+        return netFields.length;
+    }
+}
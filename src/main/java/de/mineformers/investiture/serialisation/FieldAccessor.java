@@ -0,0 +1,95 @@
+package de.mineformers.investiture.serialisation;
+
+/**
+ * Reads and writes a single field, generated for each serialised field by {@link FieldAccessors}.
+ * Accessors of primitive fields also implement the getter and setter of the field's type, so the value is never boxed.
+ * All other typed methods throw an {@link UnsupportedOperationException}.
+ * <p>
+ * WARNING: This interface is only public so generated accessors can implement it, it is not supposed to be used outside of {@link Serialisation}.
+ */
+public interface FieldAccessor
+{
+    Object get(Object instance);
+
+    void set(Object instance, Object value);
+
+    default int getInt(Object instance)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default void setInt(Object instance, int value)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default float getFloat(Object instance)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default void setFloat(Object instance, float value)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default boolean getBoolean(Object instance)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default void setBoolean(Object instance, boolean value)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default double getDouble(Object instance)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default void setDouble(Object instance, double value)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default long getLong(Object instance)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default void setLong(Object instance, long value)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default byte getByte(Object instance)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default void setByte(Object instance, byte value)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default short getShort(Object instance)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default void setShort(Object instance, short value)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default char getChar(Object instance)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    default void setChar(Object instance, char value)
+    {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,186 @@
+package de.mineformers.investiture.serialisation;
+
+import com.google.common.base.Throwables;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates a {@link FieldAccessor} class for a field.
+ * <p>
+ * Each generated class keeps the method handles for its field in <code>static final</code> fields, which the JIT treats as constants,
+ * so accessing the field compiles down to a plain field access. Method handles stored in instance fields are not inlined like that.
+ * The handles cannot be embedded in the class file, the class' static initialiser fetches them through {@link #take(int)} instead.
+ * <p>
+ * WARNING: This class is only public so generated accessors can call {@link #take(int)}, it is not supposed to be used outside of
+ * {@link Serialisation}.
+ */
+public final class FieldAccessors
+{
+    private static final String ACCESSOR = Type.getInternalName(FieldAccessor.class);
+    private static final String HANDLE = Type.getInternalName(MethodHandle.class);
+    private static final String HANDLE_DESC = Type.getDescriptor(MethodHandle.class);
+    private static final String OBJECT_DESC = Type.getDescriptor(Object.class);
+    private static final AtomicInteger nextId = new AtomicInteger();
+    private static final Map<Integer, MethodHandle[]> pending = new ConcurrentHashMap<>();
+    private static final Loader loader = new Loader(FieldAccessors.class.getClassLoader());
+
+    private FieldAccessors()
+    {
+    }
+
+    /**
+     * Generates an accessor for a field, the field does not need to be accessible from this class.
+     *
+     * @param field the field to generate an accessor for
+     * @return an accessor for the field
+     */
+    static FieldAccessor create(Field field)
+    {
+        try
+        {
+            field.setAccessible(true);
+            Class<?> type = field.getType();
+            MethodHandle getter = MethodHandles.lookup().unreflectGetter(field);
+            MethodHandle setter = MethodHandles.lookup().unreflectSetter(field);
+            MethodHandle[] handles;
+            if (type.isPrimitive())
+                handles = new MethodHandle[] {
+                    getter.asType(MethodType.methodType(Object.class, Object.class)),
+                    setter.asType(MethodType.methodType(void.class, Object.class, Object.class)),
+                    getter.asType(MethodType.methodType(type, Object.class)),
+                    setter.asType(MethodType.methodType(void.class, Object.class, type))
+                };
+            else
+                handles = new MethodHandle[] {
+                    getter.asType(MethodType.methodType(Object.class, Object.class)),
+                    setter.asType(MethodType.methodType(void.class, Object.class, Object.class))
+                };
+            int id = nextId.getAndIncrement();
+            String name = ACCESSOR + "$" + id;
+            pending.put(id, handles);
+            try
+            {
+                // Instantiating the class runs its static initialiser, which takes the handles
+                return (FieldAccessor) loader.define(name.replace('/', '.'), generate(name, id, type)).newInstance();
+            }
+            finally
+            {
+                pending.remove(id);
+            }
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Hands the method handles of a generated accessor to its static initialiser.
+     *
+     * @param id the ID of the accessor
+     * @return the method handles of the accessor, the boxing getter and setter followed by the typed ones for primitive fields
+     */
+    public static MethodHandle[] take(int id)
+    {
+        return pending.remove(id);
+    }
+
+    private static byte[] generate(String name, int id, Class<?> type)
+    {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, name, null, "java/lang/Object", new String[] {ACCESSOR});
+        int handles = type.isPrimitive() ? 4 : 2;
+        for (int i = 0; i < handles; i++)
+            writer.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "handle" + i, HANDLE_DESC, null, null).visitEnd();
+
+        MethodVisitor mv = writer.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn(id);
+        mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(FieldAccessors.class), "take", "(I)[" + HANDLE_DESC, false);
+        for (int i = 0; i < handles; i++)
+        {
+            mv.visitInsn(DUP);
+            mv.visitLdcInsn(i);
+            mv.visitInsn(AALOAD);
+            mv.visitFieldInsn(PUTSTATIC, name, "handle" + i, HANDLE_DESC);
+        }
+        mv.visitInsn(POP);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        generateGetter(writer, name, "get", 0, Type.getType(Object.class));
+        generateSetter(writer, name, "set", 1, Type.getType(Object.class));
+        if (type.isPrimitive())
+        {
+            // int becomes getInt and setInt, matching the methods of the accessor interface
+            String suffix = Character.toUpperCase(type.getName().charAt(0)) + type.getName().substring(1);
+            generateGetter(writer, name, "get" + suffix, 2, Type.getType(type));
+            generateSetter(writer, name, "set" + suffix, 3, Type.getType(type));
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void generateGetter(ClassWriter writer, String owner, String method, int handle, Type type)
+    {
+        String desc = "(" + OBJECT_DESC + ")" + type.getDescriptor();
+        MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, method, desc, null, null);
+        mv.visitCode();
+        mv.visitFieldInsn(GETSTATIC, owner, "handle" + handle, HANDLE_DESC);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKEVIRTUAL, HANDLE, "invokeExact", desc, false);
+        mv.visitInsn(type.getOpcode(IRETURN));
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void generateSetter(ClassWriter writer, String owner, String method, int handle, Type type)
+    {
+        String desc = "(" + OBJECT_DESC + type.getDescriptor() + ")V";
+        MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, method, desc, null, null);
+        mv.visitCode();
+        mv.visitFieldInsn(GETSTATIC, owner, "handle" + handle, HANDLE_DESC);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(type.getOpcode(ILOAD), 2);
+        mv.visitMethodInsn(INVOKEVIRTUAL, HANDLE, "invokeExact", desc, false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Defines the generated accessors, delegating to the loader of this class so they can see the accessor interface.
+     */
+    private static class Loader extends ClassLoader
+    {
+        Loader(ClassLoader parent)
+        {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes)
+        {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -1,10 +1,7 @@
 package de.mineformers.investiture.serialisation;
 
-import com.google.common.base.Throwables;
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Table;
+import com.google.common.base.Defaults;
+import com.google.common.primitives.Primitives;
 import de.mineformers.investiture.network.ManualTranslation;
 import de.mineformers.investiture.network.Message;
 import io.netty.buffer.ByteBuf;
@@ -23,7 +20,7 @@ import org.apache.commons.lang3.ClassUtils;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.StreamSupport;
 
 /**
@@ -36,8 +33,19 @@ public class Serialisation
 {
     public static final Serialisation INSTANCE = new Serialisation();
     private Map<Class<?>, Translator<?, ?>> translators = new HashMap<>();
-    private Multimap<String, FieldData> fields = HashMultimap.create();
-    private Table<String, String, Translator<?, ?>> fieldTranslators = HashBasedTable.create();
+    /**
+     * The built-in translators of primitive types, fields using them are written directly by {@link #serialisePrimitive(FieldData, Object, ByteBuf)}.
+     */
+    private final Set<Translator<?, ?>> primitiveTranslators = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Map<Class<?>, ClassCodec> codecs = new ConcurrentHashMap<>();
+    private final ClassValue<ClassCodec> codecCache = new ClassValue<ClassCodec>()
+    {
+        @Override
+        protected ClassCodec computeValue(Class<?> type)
+        {
+            return codecs.getOrDefault(type, ClassCodec.EMPTY);
+        }
+    };
 
     /**
      * Constructor that registers default serialisation.
@@ -74,6 +82,7 @@ public class Serialisation
             }
         });
 
+        // Primitive translators, serialisePrimitive and deserialisePrimitive write the same format without boxing and must be kept in sync
         // int translator
         registerTranslator(Integer.TYPE, new Translator<Integer, NBTTagInt>()
         {
@@ -298,6 +307,10 @@ public class Serialisation
             }
         });
 
+        for (Class<?> type : Primitives.allPrimitiveTypes())
+            if (translators.containsKey(type))
+                primitiveTranslators.add(translators.get(type));
+
         // ItemStack translator
         registerTranslator(ItemStack.class, new Translator<ItemStack, NBTTagCompound>()
         {
@@ -648,29 +661,41 @@ public class Serialisation
      *
      * @param type          the type to get the fields from
      * @param onlyAnnotated specifies whether all fields should be synchronised or only those with the {@link Serialise} annotation.
-     * @return a set of fields to synchronise
+     * @return an ordered list of fields to synchronise
      */
-    public Set<FieldData> getNetFields(Class<?> type, boolean onlyAnnotated)
+    public List<FieldData> getNetFields(Class<?> type, boolean onlyAnnotated)
     {
-        if (!fields.containsKey(type.getName()))
+        if (!codecs.containsKey(type))
             registerClass(type, onlyAnnotated);
-        return fields.get(type.getName()).stream().filter(f -> f.net).collect(Collectors.toSet());
+        return codec(type).netFields();
+    }
+
+    /**
+     * @param type the type to get the codec for
+     * @return the codec compiled for the type when it was registered, an empty codec if it was never registered
+     */
+    public ClassCodec codec(Class<?> type)
+    {
+        return codecCache.get(type);
     }
 
     /**
      * Registers a message to the serialisation framework. Allows faster serialisation due to caching of the results of intensive reflective
      * operations.
+     * Registering a class again replaces its previous codec.
      *
      * @param type the class representing the type of the message
      */
     public void registerClass(Class<?> type, boolean onlyAnnotated)
     {
+        List<FieldData> result = new ArrayList<>();
         StreamSupport
             .stream(ClassUtils.hierarchy(type, ClassUtils.Interfaces.INCLUDE).spliterator(), false)
             .map(Class::getDeclaredFields)
             .flatMap(Arrays::stream)
             .filter(f -> (f.getModifiers() & Modifier.STATIC) == 0)
-            .sorted(Comparator.comparing(Field::getName))
+            // Both sides need to agree on the order, the declaring class breaks ties between shadowed fields
+            .sorted(Comparator.comparing(Field::getName).thenComparing(f -> f.getDeclaringClass().getName()))
             .forEach(f ->
                      {
                          if (f.getAnnotationsByType(ManualTranslation.class).length != 0)
@@ -686,11 +711,12 @@ public class Serialisation
                          else if (onlyAnnotated)
                              return;
 
-                         fields.put(type.getName(), new FieldData(f, nbt, net));
                          // Cache the translator for each field, prevents disparities between different points in time
-                         f.setAccessible(true);
-                         fieldTranslators.put(type.getName(), f.getName(), findTranslator(f.getType()));
+                         Translator<?, ?> translator = findTranslator(f.getType());
+                         result.add(new FieldData(f, translator, primitiveTranslators.contains(translator), nbt, net));
                      });
+        codecs.put(type, new ClassCodec(result.toArray(new FieldData[result.size()])));
+        codecCache.remove(type);
     }
 
     /**
@@ -701,13 +727,9 @@ public class Serialisation
      */
     public void serialise(Object object, NBTTagCompound compound)
     {
-        String className = object.getClass().getName();
-        for (FieldData f : this.fields.get(className))
+        for (FieldData f : codec(object.getClass()).nbtFields)
         {
-            if (!f.nbt)
-                continue;
-            Translator<?, ?> translator = fieldTranslators.get(className, f.name);
-            Optional<? extends NBTBase> value = translator.serialise(f.get(object));
+            Optional<? extends NBTBase> value = f.translator.serialise(f.get(object));
             value.ifPresent(v -> compound.setTag(f.name, v));
         }
     }
@@ -720,14 +742,10 @@ public class Serialisation
      */
     public void deserialise(NBTTagCompound compound, Object object)
     {
-        String className = object.getClass().getName();
-        for (FieldData f : this.fields.get(className))
-        {
-            if (!f.nbt)
-                continue;
-            Translator<?, ?> translator = fieldTranslators.get(className, f.name);
-            f.set(object, translator.deserialise(compound.hasKey(f.name) ? Optional.ofNullable(compound.getTag(f.name))
-                                                                         : Optional.empty()));
+        for (FieldData f : codec(object.getClass()).nbtFields)
+        {
+            f.set(object, f.translator.deserialise(compound.hasKey(f.name) ? Optional.ofNullable(compound.getTag(f.name))
+                                                                           : Optional.empty()));
         }
     }
 
@@ -739,13 +757,12 @@ public class Serialisation
      */
     public void serialiseFrom(Object object, ByteBuf buffer)
     {
-        String className = object.getClass().getName();
-        for (FieldData f : this.fields.get(className))
+        for (FieldData f : codec(object.getClass()).netFields)
         {
-            if (!f.net)
-                continue;
-            Translator<?, ?> translator = fieldTranslators.get(className, f.name);
-            translator.serialise(f.get(object), buffer);
+            if (f.direct)
+                serialisePrimitive(f, object, buffer);
+            else
+                f.translator.serialise(f.get(object), buffer);
         }
     }
 
@@ -757,32 +774,35 @@ public class Serialisation
      */
     public void deserialiseTo(ByteBuf buffer, Object object)
     {
-        String className = object.getClass().getName();
-        for (FieldData f : this.fields.get(className))
+        for (FieldData f : codec(object.getClass()).netFields)
         {
-            if (!f.net)
-                continue;
-            Translator<?, ?> translator = fieldTranslators.get(className, f.name);
-            f.set(object, translator.deserialise(buffer));
+            if (f.direct)
+                deserialisePrimitive(buffer, f, object);
+            else
+                f.set(object, f.translator.deserialise(buffer));
         }
     }
 
     /**
      * Serialises all specified fields of a message to a byte buffer, utilising translators that fit each field's type best.
+     * Each field is identified by its position among the net fields of the object's codec, so both sides need to have registered the same class.
      *
      * @param object the message to serialise
-     * @param fields the fields to serialise
+     * @param fields the ordinals of the net fields to serialise
      * @param buffer the buffer to serialise the message into
      */
-    public void serialiseFieldsFrom(Object object, Collection<FieldData> fields, ByteBuf buffer)
+    public void serialiseFieldsFrom(Object object, BitSet fields, ByteBuf buffer)
     {
-        String className = object.getClass().getName();
-        buffer.writeInt(fields.size());
-        for (FieldData f : fields)
+        FieldData[] netFields = codec(object.getClass()).netFields;
+        ByteBufUtils.writeVarInt(buffer, fields.cardinality(), 5);
+        for (int i = fields.nextSetBit(0); i >= 0; i = fields.nextSetBit(i + 1))
         {
-            ByteBufUtils.writeUTF8String(buffer, f.name);
-            Translator<?, ?> translator = fieldTranslators.get(className, f.name);
-            translator.serialise(f.get(object), buffer);
+            FieldData f = netFields[i];
+            ByteBufUtils.writeVarInt(buffer, i, 5);
+            if (f.direct)
+                serialisePrimitive(f, object, buffer);
+            else
+                f.translator.serialise(f.get(object), buffer);
         }
     }
 
@@ -794,14 +814,15 @@ public class Serialisation
      */
     public void deserialiseFieldsTo(ByteBuf buffer, Object object)
     {
-        String className = object.getClass().getName();
-        int count = buffer.readInt();
+        FieldData[] netFields = codec(object.getClass()).netFields;
+        int count = ByteBufUtils.readVarInt(buffer, 5);
         for (int i = 0; i < count; i++)
         {
-            String fieldName = ByteBufUtils.readUTF8String(buffer);
-            FieldData f = fields.get(className).stream().filter(field -> Objects.equals(field.name, fieldName)).findFirst().get();
-            Translator<?, ?> translator = fieldTranslators.get(className, f.name);
-            f.set(object, translator.deserialise(buffer));
+            FieldData f = netFields[ByteBufUtils.readVarInt(buffer, 5)];
+            if (f.direct)
+                deserialisePrimitive(buffer, f, object);
+            else
+                f.set(object, f.translator.deserialise(buffer));
         }
     }
 
@@ -825,77 +846,137 @@ public class Serialisation
         return (T) findTranslator(type).deserialise(buffer);
     }
 
+    /**
+     * Writes a primitive field directly to a buffer, producing the same output as the respective built-in translator but without boxing the value.
+     * Only used for fields whose translator is one of the built-in primitive ones, so replacing a primitive translator still takes effect.
+     *
+     * @param f      the field to write
+     * @param object the instance to get the value from
+     * @param buffer the buffer to write the value into
+     */
+    private static void serialisePrimitive(FieldData f, Object object, ByteBuf buffer)
+    {
+        // Primitives are never null, but the translators' format always contains the flag
+        buffer.writeBoolean(true);
+        FieldAccessor accessor = f.accessor;
+        Class<?> type = f.type;
+        if (type == int.class)
+            buffer.writeInt(accessor.getInt(object));
+        else if (type == float.class)
+            buffer.writeFloat(accessor.getFloat(object));
+        else if (type == boolean.class)
+            buffer.writeBoolean(accessor.getBoolean(object));
+        else if (type == double.class)
+            buffer.writeDouble(accessor.getDouble(object));
+        else if (type == long.class)
+            buffer.writeLong(accessor.getLong(object));
+        else if (type == byte.class)
+            buffer.writeByte(accessor.getByte(object));
+        else if (type == short.class)
+            buffer.writeShort(accessor.getShort(object));
+        else if (type == char.class)
+            buffer.writeChar(accessor.getChar(object));
+    }
+
+    /**
+     * Reads a primitive field directly from a buffer, accepting the same input as the respective built-in translator but without boxing the value.
+     *
+     * @param buffer the buffer to read the value from
+     * @param f      the field to read
+     * @param object the instance to set the value in
+     */
+    private static void deserialisePrimitive(ByteBuf buffer, FieldData f, Object object)
+    {
+        boolean present = buffer.readBoolean();
+        FieldAccessor accessor = f.accessor;
+        Class<?> type = f.type;
+        if (type == int.class)
+            accessor.setInt(object, present ? buffer.readInt() : 0);
+        else if (type == float.class)
+            accessor.setFloat(object, present ? buffer.readFloat() : 0);
+        else if (type == boolean.class)
+            accessor.setBoolean(object, present && buffer.readBoolean());
+        else if (type == double.class)
+            accessor.setDouble(object, present ? buffer.readDouble() : 0);
+        else if (type == long.class)
+            accessor.setLong(object, present ? buffer.readLong() : 0);
+        else if (type == byte.class)
+            accessor.setByte(object, present ? buffer.readByte() : 0);
+        else if (type == short.class)
+            accessor.setShort(object, present ? buffer.readShort() : 0);
+        else if (type == char.class)
+            accessor.setChar(object, present ? buffer.readChar() : 0);
+    }
+
     /**
      * Represents any serialisable field.
+     * The field is accessed through an accessor generated when its class is registered, primitive fields are read and written without boxing
+     * by the (de)serialisation methods.
      */
     public static class FieldData
     {
         public final Field field;
         public final String name;
+        public final Class<?> type;
+        public final Translator<?, ?> translator;
         public final boolean nbt;
         public final boolean net;
+        /**
+         * Whether the field is primitive and uses the built-in translator, i.e. can be written without boxing.
+         */
+        final boolean direct;
+        final FieldAccessor accessor;
 
-        private FieldData(Field field, boolean nbt, boolean net)
+        private FieldData(Field field, Translator<?, ?> translator, boolean direct, boolean nbt, boolean net)
         {
             this.field = field;
             this.name = field.getName();
+            this.type = field.getType();
+            this.translator = translator;
+            this.direct = direct && type.isPrimitive();
             this.nbt = nbt;
             this.net = net;
+            this.accessor = FieldAccessors.create(field);
+        }
+
+        /**
+         * @return true if the field has a primitive type
+         */
+        public boolean isPrimitive()
+        {
+            return type.isPrimitive();
         }
 
         /**
          * Sets the field to a given value.
          *
-         * @param instance the instance the value is to be set in, may be null for static fields
-         * @param value    the value to set the field to
+         * @param instance the instance the value is to be set in
+         * @param value    the value to set the field to, null or mismatching values will reset primitive fields to their default value
          */
         public void set(Object instance, Object value)
         {
-            field.setAccessible(true);
             try
             {
-                field.set(instance, value);
+                if (value == null && isPrimitive())
+                    accessor.set(instance, Defaults.defaultValue(type));
+                else
+                    accessor.set(instance, value);
             }
-            catch (IllegalAccessException e)
+            catch (ClassCastException e)
             {
-                e.printStackTrace();
-            }
-            catch (IllegalArgumentException e)
-            {
-                Class<?> type = field.getType();
-                if (type.equals(byte.class))
-                    set(instance, (byte) 0);
-                else if (type.equals(short.class))
-                    set(instance, (short) 0);
-                else if (type.equals(int.class))
-                    set(instance, 0);
-                else if (type.equals(long.class))
-                    set(instance, 0L);
-                else if (type.equals(float.class))
-                    set(instance, 0f);
-                else if (type.equals(double.class))
-                    set(instance, 0d);
-                else if (type.equals(boolean.class))
-                    set(instance, false);
+                if (!isPrimitive())
+                    throw e;
+                set(instance, null);
             }
         }
 
         /**
-         * @param instance the instance to get the value from, may be null for static fields
-         * @return the value of the field in the given instance
+         * @param instance the instance to get the value from
+         * @return the value of the field in the given instance, boxed if the field is primitive
          */
         public Object get(Object instance)
         {
-            field.setAccessible(true);
-            try
-            {
-                return field.get(instance);
-            }
-            catch (IllegalAccessException e)
-            {
-                Throwables.propagate(e);
-            }
-            return null;
+            return accessor.get(instance);
         }
 
         @Override
@@ -10,7 +10,8 @@ import net.minecraft.util.math.*;
 import net.minecraft.world.World;
 
 import javax.annotation.Nullable;
-import java.util.List;
+import java.util.Collection;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 /**
@@ -28,6 +29,23 @@ public class RayTracing
      */
     @Nullable
     public static RayTraceResult rayTraceEntities(Entity camera, double reach, Predicate<Entity> predicate)
+    {
+        return rayTraceEntities(camera, reach,
+                                box -> camera.world.getEntitiesInAABBexcluding(camera, box, EntitySelectors.NOT_SPECTATING), predicate);
+    }
+
+    /**
+     * Casts a ray searching entities, only considering the given candidates.
+     *
+     * @param camera     the camera to cast the ray from
+     * @param reach      the maximum distance the ray may travel
+     * @param candidates provides all plausible targets within a box, excluding the camera, e.g. from an index
+     * @param predicate  a predicate filtering the set of plausible targets
+     * @return a result indicating the success of the ray trace
+     */
+    @Nullable
+    public static RayTraceResult rayTraceEntities(Entity camera, double reach, Function<AxisAlignedBB, ? extends Collection<Entity>> candidates,
+                                                  Predicate<Entity> predicate)
     {
         // Effectively a copy of EntityRenderer.getMouseOver, see that for details
         Vec3d start = camera.getPositionEyes(1);
@@ -35,11 +53,9 @@ public class RayTracing
         Vec3d end = start.addVector(direction.x * reach, direction.y * reach, direction.z * reach);
         Entity result = null;
         Vec3d hitVec = null;
-        List<Entity> list = camera.world.getEntitiesInAABBexcluding(camera, camera.getEntityBoundingBox()
-                                                                                  .expand(direction.x * reach,
-                                                                                            direction.y * reach,
-                                                                                            direction.z * reach)
-                                                                                  .grow(1, 1, 1), EntitySelectors.NOT_SPECTATING);
+        Collection<Entity> list = candidates.apply(camera.getEntityBoundingBox()
+                                                         .expand(direction.x * reach, direction.y * reach, direction.z * reach)
+                                                         .grow(1, 1, 1));
         double minDistance = reach;
 
         for (Entity checkedEntity : list)
@@ -0,0 +1,81 @@
+package de.mineformers.investiture.util;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IWorldEventListener;
+import net.minecraft.world.World;
+
+import javax.annotation.Nullable;
+
+/**
+ * A world event listener ignoring all events, subclasses only override the ones they are interested in.
+ */
+public abstract class WorldEventAdapter implements IWorldEventListener
+{
+    @Override
+    public void notifyBlockUpdate(World world, BlockPos pos, IBlockState oldState, IBlockState newState, int flags)
+    {
+    }
+
+    @Override
+    public void notifyLightSet(BlockPos pos)
+    {
+    }
+
+    @Override
+    public void markBlockRangeForRenderUpdate(int x1, int y1, int z1, int x2, int y2, int z2)
+    {
+    }
+
+    @Override
+    public void playSoundToAllNearExcept(@Nullable EntityPlayer player, SoundEvent sound, SoundCategory category,
+                                         double x, double y, double z, float volume, float pitch)
+    {
+    }
+
+    @Override
+    public void playRecord(SoundEvent sound, BlockPos pos)
+    {
+    }
+
+    @Override
+    public void spawnParticle(int particleID, boolean ignoreRange, double x, double y, double z,
+                              double xSpeed, double ySpeed, double zSpeed, int... parameters)
+    {
+    }
+
+    @Override
+    public void spawnParticle(int id, boolean ignoreRange, boolean minimiseLevel, double x, double y, double z,
+                              double xSpeed, double ySpeed, double zSpeed, int... parameters)
+    {
+    }
+
+    @Override
+    public void onEntityAdded(Entity entity)
+    {
+    }
+
+    @Override
+    public void onEntityRemoved(Entity entity)
+    {
+    }
+
+    @Override
+    public void broadcastSound(int soundID, BlockPos pos, int data)
+    {
+    }
+
+    @Override
+    public void playEvent(EntityPlayer player, int type, BlockPos pos, int data)
+    {
+    }
+
+    @Override
+    public void sendBlockBreakProgress(int breakerId, BlockPos pos, int progress)
+    {
+    }
+}